@@ -0,0 +1,207 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import eu.openanalytics.containerproxy.event.UserLogoutEvent;
+import eu.openanalytics.containerproxy.service.ProxyAccessControlService;
+import eu.openanalytics.containerproxy.service.ProxyService;
+import eu.openanalytics.containerproxy.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the (positive) access decisions of the `/app/**` pages, such that the access expressions and groups of a
+ * spec are not evaluated for every request (e.g. every asset of an app).
+ * Decisions are cached per session, spec and authorities of the user (i.e. when the groups of the user change, the
+ * decision is no longer used). Decisions are only cached for a short time and are removed when the user logs out,
+ * the session is destroyed or the spec changes. A denied access is never cached, neither is an access that is only
+ * allowed because the user has an existing proxy of the spec (since the proxy can be stopped at any moment).
+ * The decisions are grouped per session, such that they can be removed without iterating over all decisions.
+ */
+@Component
+public class AccessDecisionCache {
+
+    private static final String PROP_ACCESS_DECISION_CACHE_TTL = "proxy.access-decision-cache-ttl";
+    private static final long MAX_SESSIONS = 100_000;
+
+    private final ConcurrentHashMap<String, Set<String>> sessionIdsByUserId = new ConcurrentHashMap<>();
+
+    private Cache<String, SessionDecisions> sessions;
+
+    private long ttl;
+
+    @Inject
+    private ProxyAccessControlService proxyAccessControlService;
+
+    @Inject
+    private ProxyService proxyService;
+
+    @Inject
+    private UserService userService;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        Duration ttl = environment.getProperty(PROP_ACCESS_DECISION_CACHE_TTL, Duration.class, Duration.ofSeconds(10));
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        this.ttl = ttl.toNanos();
+        // every decision of a session is at most ttl old, therefore a session that was not accessed for ttl has no valid decisions
+        sessions = Caffeine.newBuilder()
+            .expireAfterAccess(ttl)
+            .maximumSize(MAX_SESSIONS)
+            .evictionListener((String sessionId, SessionDecisions decisions, RemovalCause cause) -> removeSessionId(decisions, sessionId))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, "shinyproxy.access-decisions");
+    }
+
+    public boolean canAccessOrHasExistingProxy(Authentication auth, RequestAuthorizationContext context) {
+        HttpSession session = context.getRequest().getSession(false);
+        String specId = context.getVariables().get("specId");
+        if (sessions == null || session == null || specId == null) {
+            return proxyAccessControlService.canAccessOrHasExistingProxy(auth, context);
+        }
+        String userId = userService.getUserId(auth);
+        List<String> authorities = auth.getAuthorities().stream().map(GrantedAuthority::getAuthority).sorted().toList();
+        Key key = new Key(authorities, specId);
+        SessionDecisions decisions = sessions.getIfPresent(session.getId());
+        if (decisions != null && Objects.equals(decisions.userId(), userId) && decisions.isAllowed(key, System.nanoTime())) {
+            return true;
+        }
+        if (proxyAccessControlService.canAccess(auth, specId)) {
+            getSessionDecisions(session.getId(), userId).allow(key, System.nanoTime() + ttl);
+            return true;
+        }
+        // the user may have access because of an existing proxy, this is never cached
+        // (the access itself is already evaluated, therefore only check for an existing proxy)
+        return proxyService.getUserProxiesBySpecId(specId).findAny().isPresent();
+    }
+
+    @EventListener
+    public void onUserLogoutEvent(UserLogoutEvent event) {
+        if (sessions == null || event.getUserId() == null) {
+            return;
+        }
+        Set<String> sessionIds = sessionIdsByUserId.remove(event.getUserId());
+        if (sessionIds != null) {
+            sessions.invalidateAll(sessionIds);
+        }
+    }
+
+    @EventListener
+    public void onHttpSessionDestroyedEvent(HttpSessionDestroyedEvent event) {
+        if (sessions == null) {
+            return;
+        }
+        SessionDecisions decisions = sessions.asMap().remove(event.getId());
+        if (decisions != null) {
+            removeSessionId(decisions, event.getId());
+        }
+    }
+
+    @EventListener
+    public void onSpecsChanged(SpecsChangedEvent event) {
+        if (sessions != null) {
+            sessions.asMap().values().forEach(decisions -> decisions.decisions().keySet().removeIf(key -> event.specIds().contains(key.specId())));
+        }
+    }
+
+    private SessionDecisions getSessionDecisions(String sessionId, String userId) {
+        return sessions.asMap().compute(sessionId, (k, decisions) -> {
+            if (decisions != null && Objects.equals(decisions.userId(), userId)) {
+                return decisions;
+            }
+            if (decisions != null) {
+                // another user logged in using this session
+                removeSessionId(decisions, sessionId);
+            }
+            if (userId != null) {
+                sessionIdsByUserId.computeIfAbsent(userId, (u) -> ConcurrentHashMap.newKeySet()).add(sessionId);
+            }
+            return new SessionDecisions(userId, new ConcurrentHashMap<>());
+        });
+    }
+
+    private void removeSessionId(SessionDecisions decisions, String sessionId) {
+        if (decisions.userId() != null) {
+            sessionIdsByUserId.computeIfPresent(decisions.userId(), (userId, sessionIds) -> {
+                sessionIds.remove(sessionId);
+                return sessionIds.isEmpty() ? null : sessionIds;
+            });
+        }
+    }
+
+    /**
+     * The decisions of a single session.
+     *
+     * @param userId    the user of the session
+     * @param decisions the time (see {@link System#nanoTime()}) until which the access is allowed, by key
+     */
+    private record SessionDecisions(String userId, ConcurrentHashMap<Key, Long> decisions) {
+
+        boolean isAllowed(Key key, long now) {
+            Long allowedUntil = decisions.get(key);
+            if (allowedUntil == null) {
+                return false;
+            }
+            if (allowedUntil - now <= 0) {
+                decisions.remove(key, allowedUntil);
+                return false;
+            }
+            return true;
+        }
+
+        void allow(Key key, long allowedUntil) {
+            decisions.put(key, allowedUntil);
+        }
+
+    }
+
+    private record Key(List<String> authorities, String specId) {
+    }
+
+}
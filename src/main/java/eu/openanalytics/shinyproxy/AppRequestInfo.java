@@ -22,14 +22,24 @@ package eu.openanalytics.shinyproxy;
 
 import jakarta.servlet.http.HttpServletRequest;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+/**
+ * Information about a request to an app, i.e. a request to one of:
+ * <ul>
+ *     <li>{@code <prefix>/app/<appName>[/<subPath>]}</li>
+ *     <li>{@code <prefix>/app_direct/<appName>[/<subPath>]}</li>
+ *     <li>{@code <prefix>/app_i/<appName>/<appInstance>[/<subPath>]}</li>
+ *     <li>{@code <prefix>/app_direct_i/<appName>/<appInstance>[/<subPath>]}</li>
+ * </ul>
+ * The URI is parsed in a single pass, without regular expressions, since this is done for every request to an app.
+ * The parser behaves the same as the (previously used) patterns
+ * {@code .*?/(app_i|app_direct_i)/([^/]*)/([^/]*)(/?.*)} and {@code .*?/(app|app_direct)/([^/]*)(/?.*)}, where an
+ * instance URL takes precedence over a non-instance URL.
+ */
 public class AppRequestInfo {
 
-    private static final Pattern APP_INSTANCE_PATTERN = Pattern.compile(".*?/(app_i|app_direct_i)/([^/]*)/([^/]*)(/?.*)");
-    private static final Pattern APP_PATTERN = Pattern.compile(".*?/(app|app_direct)/([^/]*)(/?.*)");
-    private static final Pattern INSTANCE_NAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_.-]*$");
+    private static final String[] APP_INSTANCE_PREFIXES = {"app_i/", "app_direct_i/"};
+    private static final String[] APP_PREFIXES = {"app/", "app_direct/"};
+    private static final int MAX_INSTANCE_NAME_LENGTH = 64;
 
     private final String appName;
     private final String appInstance;
@@ -48,56 +58,132 @@ public class AppRequestInfo {
     }
 
     public static AppRequestInfo fromURI(String uri) {
-        Matcher appMatcher = APP_PATTERN.matcher(uri);
-        Matcher appInstanceMatcher = APP_INSTANCE_PATTERN.matcher(uri);
-        if (appInstanceMatcher.matches()) {
-            String appName = appInstanceMatcher.group(2);
-            if (appName == null || appName.trim().isEmpty()) {
-                return null;
+        int appStart = -1; // start of the app name of the first non-instance URL
+        int appEnd = -1;
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (isLineTerminator(c)) {
+                // the prefix of the URL (i.e. the context path) may not contain a line terminator
+                break;
             }
-
-            String appInstance = appInstanceMatcher.group(3);
-            if (appInstance == null || appInstance.trim().isEmpty()) {
-                return null;
+            if (c != '/') {
+                continue;
             }
-
-            if (appInstance.length() > 64 || !INSTANCE_NAME_PATTERN.matcher(appInstance).matches()) {
-                return null;
+            int nameStart = matchPrefix(uri, i + 1, APP_INSTANCE_PREFIXES);
+            if (nameStart != -1) {
+                int nameEnd = uri.indexOf('/', nameStart);
+                if (nameEnd != -1) {
+                    int instanceEnd = segmentEnd(uri, nameEnd + 1);
+                    if (isValidSubPath(uri, instanceEnd)) {
+                        return createInstance(uri, nameStart, nameEnd, instanceEnd);
+                    }
+                }
             }
-
-            String subPath = appInstanceMatcher.group(4);
-            String appPath;
-            if (subPath == null || subPath.trim().isEmpty()) {
-                subPath = null;
-                appPath = uri;
-            } else {
-                subPath = subPath.trim().substring(1); // remove first slash
-                appPath = uri.substring(0, uri.length() - subPath.length());
+            if (appStart == -1) {
+                nameStart = matchPrefix(uri, i + 1, APP_PREFIXES);
+                if (nameStart != -1) {
+                    int nameEnd = segmentEnd(uri, nameStart);
+                    if (isValidSubPath(uri, nameEnd)) {
+                        appStart = nameStart;
+                        appEnd = nameEnd;
+                    }
+                }
             }
+        }
+        if (appStart == -1) {
+            return null;
+        }
+
+        String appName = uri.substring(appStart, appEnd);
+        if (appName.trim().isEmpty()) {
+            return null;
+        }
+        return create(uri, appName, "_", appEnd);
+    }
+
+    private static AppRequestInfo createInstance(String uri, int nameStart, int nameEnd, int instanceEnd) {
+        String appName = uri.substring(nameStart, nameEnd);
+        if (appName.trim().isEmpty()) {
+            return null;
+        }
+
+        String appInstance = uri.substring(nameEnd + 1, instanceEnd);
+        if (appInstance.trim().isEmpty()) {
+            return null;
+        }
+
+        if (!isValidInstanceName(appInstance)) {
+            return null;
+        }
+
+        return create(uri, appName, appInstance, instanceEnd);
+    }
+
+    private static AppRequestInfo create(String uri, String appName, String appInstance, int subPathStart) {
+        String subPath = uri.substring(subPathStart);
+        String appPath;
+        if (subPath.trim().isEmpty()) {
+            subPath = null;
+            appPath = uri;
+        } else {
+            subPath = subPath.trim().substring(1); // remove first slash
+            appPath = uri.substring(0, uri.length() - subPath.length());
+        }
+
+        return new AppRequestInfo(appName, appInstance, appPath, subPath);
+    }
 
-            return new AppRequestInfo(appName, appInstance, appPath, subPath);
-        } else if (appMatcher.matches()) {
-            String appName = appMatcher.group(2);
-            if (appName == null || appName.trim().isEmpty()) {
-                return null;
+    /**
+     * @return the index after the prefix that matches at the given position, or -1 if no prefix matches
+     */
+    private static int matchPrefix(String uri, int start, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (uri.startsWith(prefix, start)) {
+                return start + prefix.length();
             }
+        }
+        return -1;
+    }
 
-            String appInstance = "_";
+    /**
+     * @return the index of the next slash or the end of the URI
+     */
+    private static int segmentEnd(String uri, int start) {
+        int end = uri.indexOf('/', start);
+        if (end == -1) {
+            return uri.length();
+        }
+        return end;
+    }
 
-            String subPath = appMatcher.group(3);
-            String appPath;
-            if (subPath == null || subPath.trim().isEmpty()) {
-                subPath = null;
-                appPath = uri;
-            } else {
-                subPath = subPath.trim().substring(1); // remove first slash
-                appPath = uri.substring(0, uri.length() - subPath.length());
+    /**
+     * The sub-path is either empty or starts with a slash (since the preceding segment ends at a slash), but it may
+     * not contain a line terminator.
+     */
+    private static boolean isValidSubPath(String uri, int start) {
+        for (int i = start; i < uri.length(); i++) {
+            if (isLineTerminator(uri.charAt(i))) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            return new AppRequestInfo(appName, appInstance, appPath, subPath);
-        } else {
-            return null;
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isValidInstanceName(String appInstance) {
+        if (appInstance.length() > MAX_INSTANCE_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < appInstance.length(); i++) {
+            char c = appInstance.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-')) {
+                return false;
+            }
         }
+        return true;
     }
 
     public String getAppInstance() {
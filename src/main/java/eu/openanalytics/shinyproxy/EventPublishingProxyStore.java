@@ -0,0 +1,80 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.store.IProxyStore;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.Collection;
+
+/**
+ * Decorates the {@link IProxyStore} of ContainerProxy (memory or Redis), such that a {@link ProxyStoreEvent} is
+ * published after every add, update or remove operation. This allows to maintain indexes incrementally, instead of
+ * scanning the store.
+ * This bean is the primary store, therefore all components that inject an {@link IProxyStore} use it. Components that
+ * inject the concrete class of the store bypass it.
+ */
+@Component
+@Primary
+public class EventPublishingProxyStore implements IProxyStore {
+
+    /**
+     * The store of ContainerProxy, a bean is never injected into itself, therefore this is the other store bean.
+     */
+    @Inject
+    private IProxyStore delegate;
+
+    @Inject
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Override
+    public void addProxy(Proxy proxy) {
+        delegate.addProxy(proxy);
+        applicationEventPublisher.publishEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Added, proxy));
+    }
+
+    @Override
+    public void removeProxy(Proxy proxy) {
+        delegate.removeProxy(proxy);
+        applicationEventPublisher.publishEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, proxy));
+    }
+
+    @Override
+    public void updateProxy(Proxy proxy) {
+        delegate.updateProxy(proxy);
+        applicationEventPublisher.publishEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, proxy));
+    }
+
+    @Override
+    public Collection<Proxy> getAllProxies() {
+        return delegate.getAllProxies();
+    }
+
+    @Override
+    public Proxy getProxy(String proxyId) {
+        return delegate.getProxy(proxyId);
+    }
+
+}
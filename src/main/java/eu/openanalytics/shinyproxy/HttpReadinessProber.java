@@ -0,0 +1,213 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.backend.dispatcher.ProxyDispatcherService;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.service.StructuredLogger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes whether the app in a container is reachable, by making HTTP GET requests to the container's published port.
+ * All probes share a single (non-blocking) HTTP client, which keeps the connections to the containers open between
+ * attempts. Attempts are scheduled with an exponential backoff (with jitter), such that many apps starting at the
+ * same time do not result in a burst of connection attempts.
+ * The time until the first successful attempt is recorded in the `shinyproxy.proxy.readiness` histogram (per spec).
+ */
+@Component
+public class HttpReadinessProber {
+
+    private static final List<Integer> ALLOWED_RESPONSE_CODES = List.of(200, 301, 302, 303, 307, 308);
+    // the number of attempts that use a short timeout, see attempt()
+    private static final int FAST_ATTEMPTS = 5;
+    private static final Duration FAST_ATTEMPT_TIMEOUT = Duration.ofMillis(200);
+    private static final long INITIAL_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = 2000;
+    // the number of attempts after which failed attempts are logged
+    private static final int LOG_AFTER_ATTEMPTS = 10;
+
+    private final StructuredLogger slog = StructuredLogger.create(getClass());
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // attempts may block (e.g. when checking the health using the backend), therefore they don't run on the scheduler
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private ProxyDispatcherService proxyDispatcherService;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    private HttpClient httpClient;
+    private long totalWaitMs;
+    private Duration requestTimeout;
+
+    @PostConstruct
+    public void init() {
+        totalWaitMs = Long.parseLong(environment.getProperty("proxy.container-wait-time", "20000"));
+        requestTimeout = Duration.ofMillis(Long.parseLong(environment.getProperty("proxy.container-wait-timeout", "5000")));
+        httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(requestTimeout)
+            .executor(executor)
+            .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the maximum time until the future returned by {@link #probe(Proxy, URI)} completes, i.e. the
+     * `proxy.container-wait-time` plus the timeout of the last attempt
+     */
+    public Duration getMaxProbeDuration() {
+        return Duration.ofMillis(totalWaitMs).plus(requestTimeout);
+    }
+
+    /**
+     * @return a future that completes with true when the app is reachable, or with false when the app is not
+     * reachable within `proxy.container-wait-time`, or the proxy is no longer available. Cancelling the future stops
+     * the probe.
+     */
+    public CompletableFuture<Boolean> probe(Proxy proxy, URI targetURI) {
+        Probe probe = new Probe(proxy, URI.create(targetURI.toString() + "/"));
+        probe.schedule(0);
+        return probe.result;
+    }
+
+    private class Probe {
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final Proxy proxy;
+        private final URI uri;
+        private final long startTime = System.nanoTime();
+        private final long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(totalWaitMs);
+        private volatile int attempt = 0;
+
+        private Probe(Proxy proxy, URI uri) {
+            this.proxy = proxy;
+            this.uri = uri;
+        }
+
+        private void schedule(long delayMs) {
+            scheduler.schedule(() -> executor.execute(this::attempt), delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void attempt() {
+            if (result.isDone()) {
+                // e.g. cancelled because the app is ready according to its logs
+                return;
+            }
+            attempt++;
+            try {
+                if (proxy.getStatus().isUnavailable()) {
+                    // proxy got stopped while loading -> no need to try to connect it since the container will already be deleted
+                    result.complete(false);
+                    return;
+                }
+                if (attempt > FAST_ATTEMPTS && !proxyDispatcherService.getDispatcher(proxy.getSpecId()).isProxyHealthy(proxy)) {
+                    result.complete(false);
+                    return;
+                }
+                // When the container has only just started (or when the k8s service has only just been created),
+                // it could be that our traffic ends in a black hole, and we need to wait the full timeout.
+                // Therefore, we first try a few attempts with a lower timeout. If the container is fast, this will
+                // result in a faster startup. If the container is slow to startup, not time is wasted.
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(attempt <= FAST_ATTEMPTS ? FAST_ATTEMPT_TIMEOUT : requestTimeout)
+                    .GET()
+                    .build();
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, throwable) -> {
+                    if (throwable == null && ALLOWED_RESPONSE_CODES.contains(response.statusCode())) {
+                        Timer.builder("shinyproxy.proxy.readiness")
+                            .tag("spec", proxy.getSpecId())
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)
+                            .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                        result.complete(true);
+                        return;
+                    }
+                    if (throwable == null && attempt > LOG_AFTER_ATTEMPTS) {
+                        logger.warn("Received invalid status code '{}' while checking reachability of application at {}, expected one of '{}'", response.statusCode(), uri, ALLOWED_RESPONSE_CODES);
+                    }
+                    logFailedAttempt(throwable);
+                    retry();
+                });
+            } catch (Throwable t) {
+                logFailedAttempt(t);
+                retry();
+            }
+        }
+
+        private void logFailedAttempt(Throwable throwable) {
+            if (attempt <= LOG_AFTER_ATTEMPTS) {
+                return;
+            }
+            if (throwable != null) {
+                slog.warn(proxy, throwable, String.format("Retry: Checking application reachable at %s failed (attempt %d)", uri, attempt));
+            } else {
+                slog.info(proxy, String.format("Retry: Checking application reachable at %s (attempt %d)", uri, attempt));
+            }
+        }
+
+        private void retry() {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                slog.warn(proxy, String.format("Retry: Checking application reachable at %s failed after %d attempts", uri, attempt));
+                result.complete(false);
+                return;
+            }
+            long backoff = Math.min(INITIAL_BACKOFF_MS << Math.min(attempt - 1, 20), MAX_BACKOFF_MS);
+            long jitteredBackoff = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+            schedule(Math.min(jitteredBackoff, remainingMs));
+        }
+
+    }
+
+}
@@ -0,0 +1,390 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes a gzip or deflate encoded response and passes the decoded bytes to the next conduit.
+ * This is placed in front of the script injector, so that the script can be injected into compressed responses
+ * without requesting an uncompressed response from the app.
+ * The response is decoded while it arrives and only as fast as the next conduit accepts the decoded bytes, therefore
+ * at most one buffer of decoded output is kept in memory, regardless of the compression ratio.
+ * A gzip response can consist of multiple members (RFC 1952), these are decoded one after the other. Any other data
+ * after the last member (or after the deflate stream) is ignored.
+ */
+public class InflatingStreamSinkConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int FLAG_HEADER_CRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final boolean gzip;
+    /**
+     * Decoded bytes that have not yet been accepted by the next conduit. This is the only buffer used for the
+     * decoded output, the inflater is only asked for more output once this buffer has been written.
+     */
+    private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+    private Inflater inflater;
+    private State state;
+    private int headerPosition = 0;
+    private int flags = 0;
+    private int extraRemaining = 0;
+    /**
+     * Whether the last call to the inflater filled the output buffer, in which case the inflater may still hold
+     * decoded bytes, even if all input has been consumed.
+     */
+    private boolean inflaterHasOutput = false;
+    private boolean terminated = false;
+    private boolean nextTerminated = false;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param next the delegate conduit to set
+     * @param gzip whether the response is gzip encoded, otherwise it's deflate encoded
+     */
+    public InflatingStreamSinkConduit(StreamSinkConduit next, boolean gzip) {
+        super(next);
+        this.gzip = gzip;
+        this.state = gzip ? State.GZIP_HEADER : State.BODY;
+    }
+
+    @Override
+    public long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer) throws IOException {
+        return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public long transferFrom(FileChannel src, long position, long count) throws IOException {
+        return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!writeOutput()) {
+            // the next conduit cannot accept more data
+            return 0;
+        }
+        int start = src.position();
+        decode(src);
+        return src.position() - start;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+        long total = 0;
+        for (int i = offs; i < offs + len; ++i) {
+            total += write(srcs[i]);
+            if (srcs[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int writeFinal(ByteBuffer src) throws IOException {
+        return Conduits.writeFinalBasic(this, src);
+    }
+
+    @Override
+    public long writeFinal(ByteBuffer[] srcs, int offs, int len) throws IOException {
+        return Conduits.writeFinalBasic(this, srcs, offs, len);
+    }
+
+    @Override
+    public void terminateWrites() throws IOException {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        if (drain()) {
+            endInflater();
+            nextTerminated = true;
+            next.terminateWrites();
+        }
+    }
+
+    @Override
+    public void truncateWrites() throws IOException {
+        endInflater();
+        output.limit(0);
+        next.truncateWrites();
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        if (!drain()) {
+            return false;
+        }
+        if (terminated && !nextTerminated) {
+            endInflater();
+            nextTerminated = true;
+            next.terminateWrites();
+        }
+        return next.flush();
+    }
+
+    /**
+     * Decodes bytes of the buffer for as long as the next conduit accepts the decoded output.
+     * The bytes that are not consumed have to be written again by the caller.
+     */
+    private void decode(ByteBuffer src) throws IOException {
+        while (true) {
+            if (state != State.BODY && state != State.DONE) {
+                readGzipHeader(src);
+            }
+            if (state == State.DONE) {
+                // trailing garbage, ignore
+                src.position(src.limit());
+                return;
+            }
+            if (state != State.BODY || (!src.hasRemaining() && !inflaterHasOutput)) {
+                // more input is needed
+                return;
+            }
+            if (inflater == null) {
+                inflater = new Inflater(gzip || !isZlibHeader(src));
+            }
+            inflater.setInput(src);
+            boolean written;
+            try {
+                written = inflate();
+            } finally {
+                // the buffer is owned by the caller, don't keep a reference to it
+                inflater.setInput(EMPTY);
+            }
+            if (inflater.finished()) {
+                // the inflater only consumes the compressed data, the remaining bytes are the trailer and possibly another member
+                finishMember();
+            }
+            if (!written || state == State.BODY) {
+                return;
+            }
+        }
+    }
+
+    private void finishMember() {
+        inflaterHasOutput = false;
+        headerPosition = 0;
+        state = gzip ? State.GZIP_TRAILER : State.DONE;
+    }
+
+    /**
+     * Inflates the current input of the inflater and writes the result to the next conduit.
+     *
+     * @return whether the inflater needs more input, false if the next conduit cannot accept more data
+     */
+    private boolean inflate() throws IOException {
+        try {
+            while (!inflater.finished()) {
+                output.clear();
+                int decoded = inflater.inflate(output);
+                inflaterHasOutput = !output.hasRemaining();
+                output.flip();
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Cannot decode response: preset dictionary is not supported");
+                }
+                if (!writeOutput()) {
+                    return false;
+                }
+                if (!inflaterHasOutput && (decoded == 0 || inflater.needsInput())) {
+                    return true;
+                }
+            }
+            return true;
+        } catch (DataFormatException e) {
+            throw new IOException("Cannot decode response", e);
+        }
+    }
+
+    /**
+     * Writes the output that is still buffered, including the output still held by the inflater.
+     *
+     * @return whether all decoded bytes have been written to the next conduit
+     */
+    private boolean drain() throws IOException {
+        if (!writeOutput()) {
+            return false;
+        }
+        if (inflaterHasOutput && inflater != null && state == State.BODY) {
+            inflater.setInput(EMPTY);
+            if (!inflate()) {
+                return false;
+            }
+            if (inflater.finished()) {
+                finishMember();
+            }
+        }
+        return true;
+    }
+
+    private void readGzipHeader(ByteBuffer src) throws IOException {
+        while (state != State.BODY && state != State.DONE && src.hasRemaining()) {
+            if (state == State.GZIP_MEMBER) {
+                if ((src.get(src.position()) & 0xFF) != 0x1f) {
+                    // not the start of another member
+                    state = State.DONE;
+                    return;
+                }
+                // decode the next member using the same inflater
+                inflater.reset();
+                state = State.GZIP_HEADER;
+            }
+            int b = src.get() & 0xFF;
+            switch (state) {
+                case GZIP_HEADER -> {
+                    if ((headerPosition == 0 && b != 0x1f) || (headerPosition == 1 && b != 0x8b) || (headerPosition == 2 && b != Deflater.DEFLATED)) {
+                        throw new IOException("Cannot decode response: invalid gzip header");
+                    }
+                    if (headerPosition == 3) {
+                        flags = b;
+                    }
+                    // the remaining bytes of the header (mtime, xfl and os) are ignored
+                    if (++headerPosition == 10) {
+                        nextGzipHeaderState();
+                    }
+                }
+                case GZIP_EXTRA_LENGTH -> {
+                    extraRemaining |= b << (8 * headerPosition);
+                    if (++headerPosition == 2) {
+                        if (extraRemaining == 0) {
+                            nextGzipHeaderState();
+                        } else {
+                            state = State.GZIP_EXTRA;
+                        }
+                    }
+                }
+                case GZIP_EXTRA -> {
+                    if (--extraRemaining == 0) {
+                        nextGzipHeaderState();
+                    }
+                }
+                case GZIP_NAME, GZIP_COMMENT -> {
+                    if (b == 0) {
+                        nextGzipHeaderState();
+                    }
+                }
+                case GZIP_HEADER_CRC -> {
+                    if (++headerPosition == 2) {
+                        nextGzipHeaderState();
+                    }
+                }
+                case GZIP_TRAILER -> {
+                    // the crc and size of the member are ignored
+                    if (++headerPosition == 8) {
+                        headerPosition = 0;
+                        state = State.GZIP_MEMBER;
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected state: " + state);
+            }
+        }
+    }
+
+    /**
+     * Moves to the next optional field of the gzip header (in the order defined by RFC 1952), or to the body if
+     * all fields have been read.
+     */
+    private void nextGzipHeaderState() {
+        headerPosition = 0;
+        if ((flags & FLAG_EXTRA) != 0) {
+            flags &= ~FLAG_EXTRA;
+            state = State.GZIP_EXTRA_LENGTH;
+        } else if ((flags & FLAG_NAME) != 0) {
+            flags &= ~FLAG_NAME;
+            state = State.GZIP_NAME;
+        } else if ((flags & FLAG_COMMENT) != 0) {
+            flags &= ~FLAG_COMMENT;
+            state = State.GZIP_COMMENT;
+        } else if ((flags & FLAG_HEADER_CRC) != 0) {
+            flags &= ~FLAG_HEADER_CRC;
+            state = State.GZIP_HEADER_CRC;
+        } else {
+            state = State.BODY;
+        }
+    }
+
+    /**
+     * The deflate content-coding should use the zlib format, but some servers send raw deflate data.
+     * Only detected when the first two bytes are available in the same buffer, otherwise zlib is assumed.
+     */
+    private boolean isZlibHeader(ByteBuffer src) {
+        if (src.remaining() < 2) {
+            return true;
+        }
+        int cmf = src.get(src.position()) & 0xFF;
+        int flg = src.get(src.position() + 1) & 0xFF;
+        return (cmf & 0x0F) == Deflater.DEFLATED && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    /**
+     * @return whether the output buffer has been completely written to the next conduit
+     */
+    private boolean writeOutput() throws IOException {
+        while (output.hasRemaining()) {
+            if (next.write(output) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void endInflater() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        inflaterHasOutput = false;
+    }
+
+    private enum State {
+        GZIP_HEADER,
+        GZIP_EXTRA_LENGTH,
+        GZIP_EXTRA,
+        GZIP_NAME,
+        GZIP_COMMENT,
+        GZIP_HEADER_CRC,
+        BODY,
+        GZIP_TRAILER,
+        GZIP_MEMBER,
+        DONE
+    }
+
+}
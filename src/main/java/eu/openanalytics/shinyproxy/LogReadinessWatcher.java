@@ -0,0 +1,130 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.backend.IContainerBackend;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Detects that an app is ready by following the logs (stdout and stderr) of the container, until a line matches the
+ * readiness log pattern of the spec (e.g. {@code Listening on http://}). See {@link ShinyProxyTestStrategy}.
+ */
+@Component
+public class LogReadinessWatcher {
+
+    // longer lines are truncated
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    // following the logs blocks a thread until the future is completed (or the container stops)
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Inject
+    private IContainerBackend containerBackend;
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a future that is completed with true when a line of the logs matches the pattern, or with false when the
+     * logs cannot be followed or end without a matching line. Once the future is completed (or cancelled), the thread
+     * following the logs is interrupted, which stops following the logs.
+     */
+    public CompletableFuture<Boolean> watch(Proxy proxy, Pattern pattern) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        BiConsumer<OutputStream, OutputStream> outputAttacher = containerBackend.getOutputAttacher(proxy);
+        if (outputAttacher == null) {
+            result.complete(false);
+            return result;
+        }
+        Future<?> task = executor.submit(() -> {
+            try {
+                outputAttacher.accept(new MatchingOutputStream(pattern, result), new MatchingOutputStream(pattern, result));
+            } catch (Throwable t) {
+                if (!result.isDone()) {
+                    logger.debug("Error while following logs of proxy {}", proxy.getId(), t);
+                }
+            } finally {
+                result.complete(false);
+            }
+        });
+        // stop following the logs as soon as the result is known (e.g. the HTTP probe succeeded or the startup timed
+        // out and the future got cancelled), instead of waiting for the next line of the logs
+        result.whenComplete((matched, throwable) -> task.cancel(true));
+        return result;
+    }
+
+    private static class MatchingOutputStream extends OutputStream {
+
+        private final Pattern pattern;
+        private final CompletableFuture<Boolean> result;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private MatchingOutputStream(Pattern pattern, CompletableFuture<Boolean> result) {
+            this.pattern = pattern;
+            this.result = result;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (result.isDone()) {
+                // stops the output attacher
+                throw new IOException("Stopped following logs");
+            }
+            if (b == '\n') {
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (pattern.matcher(text).find()) {
+                    result.complete(true);
+                }
+            } else if (line.size() < MAX_LINE_LENGTH) {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+    }
+
+}
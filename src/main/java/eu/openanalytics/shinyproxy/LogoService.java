@@ -0,0 +1,210 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.openanalytics.containerproxy.util.ContextPathHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the logos referenced using a `file://` URI.
+ * Instead of inlining these logos as data URIs in every page, the logos are served by the {@link
+ * eu.openanalytics.shinyproxy.controllers.LogoController} using a URL containing the hash of the logo. Therefore, the
+ * response never changes and can be cached by the browser. The content of the logos is kept in a cache bounded by
+ * size, when a logo is evicted, it's loaded again from the file.
+ * When the last modified time of a file changes, the logo is loaded again and gets a new id (if the content changed).
+ * Requests for the previous id are answered with the new content, see {@link Logo#current()}.
+ * In order to not check the last modified time of the file on every page render, the id used in pages is only checked
+ * once every {@link #LAST_MODIFIED_CHECK_INTERVAL}. Requests for the logo itself always check the file.
+ */
+@Component
+public class LogoService {
+
+    private static final long MAX_CACHE_SIZE = 64 * 1024 * 1024;
+    private static final long LAST_MODIFIED_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final Logger logger = LogManager.getLogger(getClass());
+
+    /**
+     * Maps the URI of a logo to the current id of the logo, invalidated when the last modified time of the file changes.
+     */
+    private final ConcurrentHashMap<String, LogoFile> logoFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the (current and previous) ids of a logo to its URI, required in order to load the logo when it's evicted.
+     */
+    private final ConcurrentHashMap<String, String> logoUris = new ConcurrentHashMap<>();
+
+    private final Cache<String, Logo> logos = Caffeine.newBuilder()
+        .maximumWeight(MAX_CACHE_SIZE)
+        .weigher((String id, Logo logo) -> logo.data().length)
+        .build();
+
+    @Inject
+    private ContextPathHelper contextPathHelper;
+
+    /**
+     * Resolves the URI of an image to a URL that can be used in the browser.
+     * Images referenced using a `file://` URI are served by this service, other URIs are returned as-is.
+     *
+     * @param resourceURI the URI of the image
+     * @return the URL of the image or empty if the URI is empty or if the file cannot be loaded
+     */
+    public Optional<String> resolveImageURI(String resourceURI) {
+        if (resourceURI == null || resourceURI.isBlank()) {
+            return Optional.empty();
+        }
+
+        if (resourceURI.toLowerCase().startsWith("file://")) {
+            return getLogoFile(resourceURI, LAST_MODIFIED_CHECK_INTERVAL).id()
+                .map(id -> contextPathHelper.withEndingSlash() + "logo/" + id);
+        }
+        return Optional.of(resourceURI);
+    }
+
+    /**
+     * @param id the id of the logo
+     * @return the logo or empty if no logo with this id exists. If the file changed since the id was created, the
+     * current content of the logo is returned.
+     */
+    public Optional<Logo> getLogo(String id) {
+        String resourceURI = logoUris.get(id);
+        if (resourceURI == null) {
+            return Optional.empty();
+        }
+        Optional<String> currentId = getLogoFile(resourceURI, 0).id();
+        if (currentId.isEmpty()) {
+            return Optional.empty();
+        }
+        // null if the file changed after checking the last modified time, the next request loads it again
+        Logo logo = logos.get(currentId.get(), (key) -> load(resourceURI).filter(l -> l.etag().equals(key)).orElse(null));
+        if (logo == null) {
+            return Optional.empty();
+        }
+        return Optional.of(logo.withCurrent(logo.etag().equals(id)));
+    }
+
+    /**
+     * @param maxAge the time (in nanoseconds) since the last check of the last modified time of the file, after which
+     *               the file must be checked again
+     * @return the current id of the logo, (re-)loading the logo if the file was modified
+     */
+    private LogoFile getLogoFile(String resourceURI, long maxAge) {
+        long now = System.nanoTime();
+        LogoFile logoFile = logoFiles.get(resourceURI);
+        if (logoFile != null && now - logoFile.checkedAt() < maxAge) {
+            return logoFile;
+        }
+        long lastModified = lastModified(resourceURI);
+        return logoFiles.compute(resourceURI, (uri, current) -> {
+            if (current != null && current.lastModified() == lastModified) {
+                return new LogoFile(current.id(), lastModified, now);
+            }
+            Optional<Logo> logo = load(uri);
+            logo.ifPresent(l -> {
+                logoUris.put(l.etag(), uri);
+                logos.put(l.etag(), l);
+            });
+            Optional<String> id = logo.map(Logo::etag);
+            if (current != null && !current.id().equals(id)) {
+                logger.info("Logo changed: {}", uri);
+            }
+            return new LogoFile(id, lastModified, now);
+        });
+    }
+
+    private Optional<Logo> load(String resourceURI) {
+        String mimetype = URLConnection.guessContentTypeFromName(resourceURI);
+        if (mimetype == null) {
+            logger.warn("Cannot determine mimetype for resource: {}", resourceURI);
+            return Optional.empty();
+        }
+        try (InputStream input = new URI(resourceURI).toURL().openConnection().getInputStream()) {
+            byte[] data = StreamUtils.copyToByteArray(input);
+            return Optional.of(new Logo(data, mimetype, hash(data), true));
+        } catch (IOException | URISyntaxException e) {
+            logger.warn("Failed to load logo: " + resourceURI, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the last modified time of the file or 0 if it cannot be determined
+     */
+    private static long lastModified(String resourceURI) {
+        try {
+            return new File(new URI(resourceURI).getSchemeSpecificPart()).lastModified();
+        } catch (URISyntaxException | SecurityException e) {
+            return 0;
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param data     the content of the logo
+     * @param mimeType the mimetype of the logo
+     * @param etag     the (strong) ETag of the logo, this is the hash of the content and the id of the logo
+     * @param current  whether the requested id is the current id of the logo, if false the logo changed since the
+     *                 URL was created and the response must not be cached as immutable
+     */
+    public record Logo(byte[] data, String mimeType, String etag, boolean current) {
+
+        private Logo withCurrent(boolean current) {
+            return current == this.current ? this : new Logo(data, mimeType, etag, current);
+        }
+
+    }
+
+    /**
+     * @param id           the current id of the logo, empty if the file cannot be loaded
+     * @param lastModified the last modified time of the file when the id was determined
+     * @param checkedAt    the time (see {@link System#nanoTime()}) the last modified time was last checked
+     */
+    private record LogoFile(Optional<String> id, long lastModified, long checkedAt) {
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the number of instances of every app per user, used to enforce the `max-instances` property of an app.
+ * Before a proxy is started, an instance is reserved using {@link #tryReserve(String, String, String, int)}, this
+ * atomically checks and increments the counter. Therefore, it's not possible to exceed the maximum number of instances
+ * by starting many proxies at once. The counters are kept in sync using the {@link ProxyStoreEvent}s, an instance is
+ * released when the proxy is removed from the store or when {@link #release(String)} is called (e.g. when the proxy
+ * failed to start before it was added to the store). When the owner of a proxy changes, the instance is moved to the
+ * new owner.
+ */
+@Component
+public class ProxyInstanceCounter {
+
+    private final ConcurrentHashMap<Key, Integer> counts = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the apps of which the user has at least one instance, by user id.
+     * Only modified while holding the lock of this object.
+     */
+    private final ConcurrentHashMap<String, Set<String>> specIdsByUserId = new ConcurrentHashMap<>();
+
+    /**
+     * The proxies that are currently counted, required to never count (or release) a proxy twice.
+     * Only modified while holding the lock of this object.
+     */
+    private final HashMap<String, Key> proxies = new HashMap<>();
+
+    /**
+     * The proxies that were recently removed, an update event of such a proxy (e.g. a status update racing a stop)
+     * must not count the proxy again.
+     */
+    private final Cache<String, Boolean> removedProxies = Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .maximumSize(100_000)
+        .build();
+
+    /**
+     * Reserves an instance of the given app for the given user.
+     *
+     * @param userId       the id of the user
+     * @param specId       the id of the app
+     * @param proxyId      the id of the proxy that will be started
+     * @param maxInstances the maximum number of instances, -1 for no maximum
+     * @return whether the instance was reserved, false if the user already has the maximum number of instances
+     */
+    public synchronized boolean tryReserve(String userId, String specId, String proxyId, int maxInstances) {
+        if (proxies.containsKey(proxyId)) {
+            // already counted
+            return true;
+        }
+        Key key = new Key(userId, specId);
+        if (maxInstances != -1 && getCount(key) >= maxInstances) {
+            return false;
+        }
+        count(proxyId, key);
+        return true;
+    }
+
+    /**
+     * Releases the instance reserved for the given proxy (if any).
+     *
+     * @param proxyId the id of the proxy
+     */
+    public synchronized void release(String proxyId) {
+        Key key = proxies.remove(proxyId);
+        if (key != null) {
+            decrement(key);
+        }
+    }
+
+    /**
+     * @return the number of instances (including reservations) of the given app for the given user
+     */
+    public int getCount(String userId, String specId) {
+        return getCount(new Key(userId, specId));
+    }
+
+    /**
+     * @return the ids of the apps of which the given user has at least one instance (including reservations)
+     */
+    public Set<String> getSpecIds(String userId) {
+        Set<String> specIds = specIdsByUserId.get(userId);
+        if (specIds == null) {
+            return Set.of();
+        }
+        return Set.copyOf(specIds);
+    }
+
+    @EventListener
+    public synchronized void onProxyStoreEvent(ProxyStoreEvent event) {
+        Proxy proxy = event.proxy();
+        switch (event.type()) {
+            case Removed -> {
+                removedProxies.put(proxy.getId(), true);
+                release(proxy.getId());
+            }
+            case Added -> {
+                // e.g. a transferred proxy is removed and added again
+                removedProxies.invalidate(proxy.getId());
+                count(proxy.getId(), new Key(proxy.getUserId(), proxy.getSpecId()));
+            }
+            case Updated -> {
+                if (proxy.getStatus().isUnavailable() || removedProxies.getIfPresent(proxy.getId()) != null) {
+                    // the proxy is being stopped or already removed, it's released by the remove event
+                    return;
+                }
+                count(proxy.getId(), new Key(proxy.getUserId(), proxy.getSpecId()));
+            }
+        }
+    }
+
+    /**
+     * Counts the proxy for the given key, unless it's already counted for this key. If it's counted for another key
+     * (i.e. the owner changed), it's moved to the given key.
+     * Note: proxies that were not reserved (e.g. started by an API without max-instances or recovered) are counted
+     * when the first event is received.
+     */
+    private void count(String proxyId, Key key) {
+        Key oldKey = proxies.put(proxyId, key);
+        if (key.equals(oldKey)) {
+            return;
+        }
+        if (oldKey != null) {
+            decrement(oldKey);
+        }
+        if (counts.merge(key, 1, Integer::sum) == 1 && key.userId() != null && key.specId() != null) {
+            specIdsByUserId.computeIfAbsent(key.userId(), (userId) -> ConcurrentHashMap.newKeySet()).add(key.specId());
+        }
+    }
+
+    private int getCount(Key key) {
+        return counts.getOrDefault(key, 0);
+    }
+
+    private void decrement(Key key) {
+        if (counts.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1) == null && key.userId() != null && key.specId() != null) {
+            specIdsByUserId.computeIfPresent(key.userId(), (userId, specIds) -> {
+                specIds.remove(key.specId());
+                return specIds.isEmpty() ? null : specIds;
+            });
+        }
+    }
+
+    private record Key(String userId, String specId) {
+    }
+
+}
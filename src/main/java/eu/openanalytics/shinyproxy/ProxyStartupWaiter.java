@@ -0,0 +1,116 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.ContainerProxyException;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.runtime.ProxyStatus;
+import eu.openanalytics.containerproxy.service.ProxyService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allows to wait for a proxy to become {@link ProxyStatus#Up} without blocking a thread, the futures are completed
+ * when the status of the proxy changes (see {@link ProxyStoreEvent}).
+ * Since changes made by other replicas do not result in an event, the status of the proxies that are waited for is
+ * also checked periodically.
+ */
+@Component
+public class ProxyStartupWaiter {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Proxy>> waiters = new ConcurrentHashMap<>();
+
+    private final Logger logger = LogManager.getLogger(getClass());
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @Inject
+    private ProxyService proxyService;
+
+    @PostConstruct
+    public void init() {
+        executor.scheduleWithFixedDelay(this::checkWaitingProxies, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a future that is completed with the proxy once it's up, or completed exceptionally when the proxy
+     * fails to start or is removed
+     */
+    public CompletableFuture<Proxy> waitUntilUp(Proxy proxy) {
+        if (proxy.getStatus() == ProxyStatus.Up) {
+            return CompletableFuture.completedFuture(proxy);
+        }
+        CompletableFuture<Proxy> future = waiters.computeIfAbsent(proxy.getId(), (id) -> new CompletableFuture<>());
+        // the status may have changed before the future was registered
+        complete(proxy.getId(), proxyService.getProxy(proxy.getId()));
+        return future;
+    }
+
+    @EventListener
+    public void onProxyStoreEvent(ProxyStoreEvent event) {
+        if (event.type() == ProxyStoreEvent.Type.Removed) {
+            complete(event.proxy().getId(), null);
+        } else {
+            complete(event.proxy().getId(), event.proxy());
+        }
+    }
+
+    private void checkWaitingProxies() {
+        try {
+            for (String proxyId : waiters.keySet()) {
+                complete(proxyId, proxyService.getProxy(proxyId));
+            }
+        } catch (Throwable t) {
+            logger.warn("Error while checking status of starting proxies", t);
+        }
+    }
+
+    private void complete(String proxyId, Proxy proxy) {
+        if (proxy != null && proxy.getStatus() == ProxyStatus.New) {
+            return;
+        }
+        CompletableFuture<Proxy> future = waiters.remove(proxyId);
+        if (future == null) {
+            return;
+        }
+        if (proxy != null && proxy.getStatus() == ProxyStatus.Up) {
+            future.complete(proxy);
+        } else {
+            future.completeExceptionally(new ContainerProxyException("Proxy " + proxyId + " failed to start"));
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+
+/**
+ * Published (synchronously) after a proxy has been added to, updated in or removed from the local
+ * {@link eu.openanalytics.containerproxy.model.store.IProxyStore}, see {@link EventPublishingProxyStore}.
+ * Note: when using a distributed store (e.g. Redis), changes made by other ShinyProxy replicas do not result in an
+ * event.
+ */
+public record ProxyStoreEvent(Type type, Proxy proxy) {
+
+    public enum Type {
+        Added,
+        Updated,
+        Removed
+    }
+
+}
@@ -26,6 +26,7 @@ import eu.openanalytics.containerproxy.util.ContextPathHelper;
 import eu.openanalytics.shinyproxy.runtimevalues.AppInstanceKey;
 import eu.openanalytics.shinyproxy.runtimevalues.CustomAppDetailsKey;
 import eu.openanalytics.shinyproxy.runtimevalues.ShinyForceFullReloadKey;
+import eu.openanalytics.shinyproxy.runtimevalues.StartupTimelineKey;
 import eu.openanalytics.shinyproxy.runtimevalues.TrackAppUrl;
 import eu.openanalytics.shinyproxy.runtimevalues.UserTimeZoneKey;
 import eu.openanalytics.shinyproxy.runtimevalues.WebSocketReconnectionModeKey;
@@ -46,6 +47,7 @@ public class ShinyProxyConfiguration {
         RuntimeValueKeyRegistry.addRuntimeValueKey(TrackAppUrl.inst);
         RuntimeValueKeyRegistry.addRuntimeValueKey(UserTimeZoneKey.inst);
         RuntimeValueKeyRegistry.addRuntimeValueKey(CustomAppDetailsKey.inst);
+        RuntimeValueKeyRegistry.addRuntimeValueKey(StartupTimelineKey.inst);
     }
 
     @Inject
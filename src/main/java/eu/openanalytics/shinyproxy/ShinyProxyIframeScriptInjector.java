@@ -20,11 +20,17 @@
  */
 package eu.openanalytics.shinyproxy;
 
-import io.undertow.UndertowMessages;
+import io.undertow.conduits.DeflatingStreamSinkConduit;
+import io.undertow.conduits.GzipStreamSinkConduit;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.protocol.http.ServerFixedLengthStreamSinkConduit;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import org.springframework.http.HttpStatus;
+import org.xnio.Buffers;
 import org.xnio.IoUtils;
 import org.xnio.channels.StreamSourceChannel;
 import org.xnio.conduits.AbstractStreamSinkConduit;
@@ -32,46 +38,177 @@ import org.xnio.conduits.ConduitWritableByteChannel;
 import org.xnio.conduits.Conduits;
 import org.xnio.conduits.StreamSinkConduit;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 /**
  * The goal of this class is to inject a `<script>` tag into the HTML pages of the app.
  * In order to do this, we have to store the complete response in memory, inject the script and update the content-length.
+ * The response is stored in buffers of the Undertow buffer pool and written using a single gathering write.
+ * Responses that are not HTML or that are larger than the maximum buffer size are passed through, without injecting the script.
  * This is only applied to HTML requests.
+ * This is the {@link InjectionMode#Buffered} mode, see {@link ShinyProxyStreamingIframeScriptInjector} for the streaming mode.
  *
  * See https://lists.jboss.org/pipermail/undertow-dev/2019-February/002312.html
  * See https://github.com/SoftInstigate/restheart-security/blob/c88820799f89c63f56e560155861df246f908490/src/main/java/org/restheart/security/handlers/ModifiableContentSinkConduit.java
  */
 public class ShinyProxyIframeScriptInjector extends AbstractStreamSinkConduit<StreamSinkConduit> {
 
-    private final ByteArrayOutputStream outputStream;
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String IDENTITY = "identity";
+    private static final Pattern ZERO_QUALITY_PATTERN = Pattern.compile("q=0(\\.0*)?");
+
+    private static final MethodHandle FIXED_LENGTH_RESET = findFixedLengthReset();
+
+    private final List<PooledByteBuffer> body = new ArrayList<>();
     private final HttpServerExchange exchange;
+    private final ByteBufferPool bufferPool;
     private final String scriptPath;
+    private final long maxBufferSize;
+    private final Runnable onBufferLimitExceeded;
+    private long bufferedLength = 0;
+    private ByteBuffer[] output;
+    private boolean decided = false;
+    private boolean passThrough = false;
+    private boolean terminated = false;
+    private boolean nextTerminated = false;
 
     /**
      * Construct a new instance.
      *
-     * @param next     the delegate conduit to set
-     * @param exchange the exchange
+     * @param next                  the delegate conduit to set
+     * @param exchange              the exchange
+     * @param scriptPath            the path of the script to inject
+     * @param maxBufferSize         the maximum number of bytes to buffer, or -1 for no limit. When the response is
+     *                              larger, it is passed through without injecting the script.
+     * @param onBufferLimitExceeded called when the response is passed through because it exceeds the limit
      */
-    public ShinyProxyIframeScriptInjector(StreamSinkConduit next, HttpServerExchange exchange, String scriptPath) {
+    public ShinyProxyIframeScriptInjector(StreamSinkConduit next, HttpServerExchange exchange, String scriptPath, long maxBufferSize, Runnable onBufferLimitExceeded) {
         super(next);
         this.exchange = exchange;
+        this.bufferPool = exchange.getConnection().getByteBufferPool();
         this.scriptPath = scriptPath;
-        long length = exchange.getResponseContentLength();
-        if (length <= 0L) {
-            outputStream = new ByteArrayOutputStream();
+        this.maxBufferSize = maxBufferSize;
+        this.onBufferLimitExceeded = onBufferLimitExceeded;
+    }
+
+    /**
+     * Creates the conduit that injects the script into the response, according to the given mode.
+     * This must be called from a response wrapper, i.e. after the status code and headers of the response are known,
+     * but before the underlying conduit is created.
+     *
+     * @param options the options of the injection
+     */
+    public static StreamSinkConduit wrap(ConduitFactory<StreamSinkConduit> factory, HttpServerExchange exchange, Options options) {
+        String scriptPath = options.scriptPath();
+        String encoding = options.encoding();
+        if (encoding == null) {
+            if (options.mode() == InjectionMode.Streaming) {
+                if (!isHtmlResponse(exchange)) {
+                    return factory.create();
+                }
+                // the length of the response changes, by removing the Content-Length header, Undertow switches to chunked encoding
+                exchange.getResponseHeaders().remove(Headers.CONTENT_LENGTH);
+                return new ShinyProxyStreamingIframeScriptInjector(factory.create(), scriptPath);
+            }
+            return new ShinyProxyIframeScriptInjector(factory.create(), exchange, scriptPath, options.maxBufferSize(), options.onBufferLimitExceeded());
+        }
+
+        if (!isHtmlResponse(exchange)) {
+            // only encodings accepted by the client were requested from the app -> response can be passed as-is
+            return factory.create();
+        }
+        String appEncoding = exchange.getResponseHeaders().getFirst(Headers.CONTENT_ENCODING);
+        if (appEncoding != null && !appEncoding.equalsIgnoreCase(IDENTITY) && !appEncoding.equalsIgnoreCase(GZIP) && !appEncoding.equalsIgnoreCase(DEFLATE)) {
+            // unknown encoding, cannot inject the script
+            return factory.create();
+        }
+
+        // 1. encode the response for the client (this removes the Content-Length header)
+        exchange.getResponseHeaders().remove(Headers.CONTENT_LENGTH);
+        exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, encoding);
+        addVaryAcceptEncoding(exchange);
+        StreamSinkConduit encoder;
+        if (encoding.equals(GZIP)) {
+            encoder = new GzipStreamSinkConduit(factory, exchange);
+        } else {
+            encoder = new DeflatingStreamSinkConduit(factory, exchange);
+        }
+
+        // 2. inject the script into the decoded response
+        StreamSinkConduit injector;
+        if (options.mode() == InjectionMode.Streaming) {
+            injector = new ShinyProxyStreamingIframeScriptInjector(encoder, scriptPath);
         } else {
-            if (length > Integer.MAX_VALUE) {
-                throw UndertowMessages.MESSAGES.responseTooLargeToBuffer(length);
+            injector = new ShinyProxyIframeScriptInjector(encoder, exchange, scriptPath, options.maxBufferSize(), options.onBufferLimitExceeded());
+        }
+
+        // 3. decode the response of the app
+        if (appEncoding == null || appEncoding.equalsIgnoreCase(IDENTITY)) {
+            return injector;
+        }
+        return new InflatingStreamSinkConduit(injector, appEncoding.equalsIgnoreCase(GZIP));
+    }
+
+    /**
+     * The encoding of the response depends on the Accept-Encoding header of the request, therefore caches must not
+     * use it for requests with another Accept-Encoding header.
+     * Note: a response that is not encoded can be served to any client, hence the header is only added to encoded responses.
+     */
+    private static void addVaryAcceptEncoding(HttpServerExchange exchange) {
+        HeaderValues vary = exchange.getResponseHeaders().get(Headers.VARY);
+        if (vary != null && vary.stream().anyMatch(value -> value.trim().equals("*") || value.toLowerCase(Locale.ROOT).contains("accept-encoding"))) {
+            return;
+        }
+        exchange.getResponseHeaders().add(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+    }
+
+    /**
+     * Selects the encoding to use for an HTML response, based on the Accept-Encoding header of the client.
+     * Only gzip and deflate are supported, since the response of the app must be decoded in order to inject the script.
+     *
+     * @return the encoding or null if the client does not accept gzip or deflate
+     */
+    public static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String value : acceptEncoding.split(",")) {
+            String[] parts = value.split(";");
+            String coding = parts[0].trim();
+            if (parts.length > 1 && ZERO_QUALITY_PATTERN.matcher(parts[1].trim()).matches()) {
+                // explicitly not accepted
+                continue;
+            }
+            if (coding.equalsIgnoreCase(GZIP)) {
+                return GZIP;
+            }
+            if (coding.equalsIgnoreCase(DEFLATE)) {
+                deflate = true;
             }
-            outputStream = new ByteArrayOutputStream((int) length);
         }
+        return deflate ? DEFLATE : null;
+    }
+
+    static boolean isHtmlResponse(HttpServerExchange exchange) {
+        return exchange.getStatusCode() == HttpStatus.OK.value()
+            && exchange.getResponseHeaders().get("Content-Type") != null
+            && exchange.getResponseHeaders().get("Content-Type").stream().anyMatch(headerValue -> headerValue.contains("text/html"));
+    }
+
+    static String createScriptTag(String scriptPath) {
+        return "<script src='" + scriptPath + "'></script>";
     }
 
     @Override
@@ -85,62 +222,172 @@ public class ShinyProxyIframeScriptInjector extends AbstractStreamSinkConduit<St
     }
 
     @Override
-    public int write(java.nio.ByteBuffer src) throws IOException {
-        byte[] bytes = new byte[src.remaining()];
-        src.get(bytes, 0, bytes.length);
-        outputStream.write(bytes);
-        return bytes.length;
+    public int write(ByteBuffer src) throws IOException {
+        decide();
+        if (passThrough) {
+            if (!writeOutput()) {
+                // previously buffered data not yet written
+                return 0;
+            }
+            return next.write(src);
+        }
+        if (maxBufferSize >= 0 && bufferedLength + src.remaining() > maxBufferSize) {
+            startPassThrough();
+            return write(src);
+        }
+        int total = src.remaining();
+        while (src.hasRemaining()) {
+            ByteBuffer current = currentBuffer();
+            int limit = src.limit();
+            src.limit(src.position() + Math.min(current.remaining(), src.remaining()));
+            current.put(src);
+            src.limit(limit);
+        }
+        bufferedLength += total;
+        return total;
     }
 
     @Override
-    public long write(java.nio.ByteBuffer[] srcs, int offs, int len) throws IOException {
-        for (int i = offs; i < len; ++i) {
+    public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+        long total = 0;
+        for (int i = offs; i < offs + len; ++i) {
+            total += write(srcs[i]);
             if (srcs[i].hasRemaining()) {
-                return write(srcs[i]);
+                break;
             }
         }
-        return 0;
+        return total;
     }
 
     @Override
-    public int writeFinal(java.nio.ByteBuffer src) throws IOException {
+    public int writeFinal(ByteBuffer src) throws IOException {
         return Conduits.writeFinalBasic(this, src);
     }
 
     @Override
-    public long writeFinal(java.nio.ByteBuffer[] srcs, int offs, int len) throws IOException {
+    public long writeFinal(ByteBuffer[] srcs, int offs, int len) throws IOException {
         return Conduits.writeFinalBasic(this, srcs, offs, len);
     }
 
     @Override
     public void terminateWrites() throws IOException {
-        ByteBuffer out;
-        // 1. check whether it's a html response and success
-        if (exchange.getStatusCode() == HttpStatus.OK.value()
-            && exchange.getResponseHeaders().get("Content-Type") != null
-            && exchange.getResponseHeaders().get("Content-Type").stream().anyMatch(headerValue -> headerValue.contains("text/html"))) {
-            // 2. inject script
-            String r = outputStream.toString(StandardCharsets.UTF_8);
-            r += "<script src='" + scriptPath + "'></script>";
-            out = ByteBuffer.wrap(r.getBytes(StandardCharsets.UTF_8));
-        } else {
-            // 2. read bytes
-            out = ByteBuffer.wrap(outputStream.toByteArray());
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        decide();
+        if (!passThrough) {
+            // 1. collect the buffered body and inject the script (the response is a successful HTML response)
+            output = new ByteBuffer[body.size() + 1];
+            for (int i = 0; i < body.size(); i++) {
+                output[i] = body.get(i).getBuffer().flip();
+            }
+            output[body.size()] = ByteBuffer.wrap(createScriptTag(scriptPath).getBytes(StandardCharsets.UTF_8));
+            // 2. set Content-Length header
+            updateContentLength(exchange, bufferedLength + output[body.size()].remaining());
+        }
+        // 3. write new response (to the next stream), anything not yet written is written during flush
+        finishWrites();
+    }
+
+    @Override
+    public void truncateWrites() throws IOException {
+        freeBody();
+        next.truncateWrites();
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        if (terminated ? !finishWrites() : !writeOutput()) {
+            return false;
+        }
+        return next.flush();
+    }
+
+    /**
+     * Decides (once) whether the response must be buffered, based on the status code, content type and length
+     * of the response. These are known before the first byte of the body is written.
+     */
+    private void decide() {
+        if (decided) {
+            return;
+        }
+        decided = true;
+        if (!isHtmlResponse(exchange)) {
+            passThrough = true;
+        } else if (maxBufferSize >= 0 && exchange.getResponseContentLength() > maxBufferSize) {
+            passThrough = true;
+            onBufferLimitExceeded.run();
+        }
+    }
+
+    /**
+     * The response is larger than the maximum buffer size: stop buffering and pass the remaining data through,
+     * without injecting the script.
+     */
+    private void startPassThrough() {
+        passThrough = true;
+        output = new ByteBuffer[body.size()];
+        for (int i = 0; i < body.size(); i++) {
+            output[i] = body.get(i).getBuffer().flip();
+        }
+        onBufferLimitExceeded.run();
+    }
+
+    /**
+     * Writes the (remaining) output to the next conduit using a gathering write.
+     *
+     * @return whether the complete output has been written
+     */
+    private boolean writeOutput() throws IOException {
+        if (output == null) {
+            return true;
+        }
+        while (Buffers.hasRemaining(output)) {
+            if (next.write(output, 0, output.length) == 0) {
+                // next conduit cannot accept more data
+                return false;
+            }
+        }
+        output = null;
+        freeBody();
+        return true;
+    }
+
+    /**
+     * Writes the remaining output and terminates the next conduit once everything is written.
+     *
+     * @return whether the complete output has been written
+     */
+    private boolean finishWrites() throws IOException {
+        if (!writeOutput()) {
+            return false;
+        }
+        if (!nextTerminated) {
+            nextTerminated = true;
+            next.terminateWrites();
         }
-        // 3. set Content-Length header
-        updateContentLength(exchange, out);
-        // 4. write new response (to the next stream)
-        do {
-            next.write(out);
-        } while (out.hasRemaining());
+        return true;
+    }
 
-        // 5. call parent method
-        super.terminateWrites();
+    private ByteBuffer currentBuffer() {
+        if (!body.isEmpty()) {
+            ByteBuffer last = body.getLast().getBuffer();
+            if (last.hasRemaining()) {
+                return last;
+            }
+        }
+        PooledByteBuffer pooled = bufferPool.allocate();
+        body.add(pooled);
+        return pooled.getBuffer();
     }
 
-    private void updateContentLength(HttpServerExchange exchange, ByteBuffer output) {
-        long length = output.limit();
+    private void freeBody() {
+        body.forEach(PooledByteBuffer::close);
+        body.clear();
+    }
 
+    private void updateContentLength(HttpServerExchange exchange, long length) {
         // check works case-insensitive
         if (!exchange.getResponseHeaders().contains("Transfer-Encoding")) {
             exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, length);
@@ -148,24 +395,54 @@ public class ShinyProxyIframeScriptInjector extends AbstractStreamSinkConduit<St
 
         // also update length of ServerFixedLengthStreamSinkConduit
         if (next instanceof ServerFixedLengthStreamSinkConduit) {
-            Method m;
-
-            try {
-                m = ServerFixedLengthStreamSinkConduit.class.getDeclaredMethod(
-                    "reset",
-                    long.class,
-                    HttpServerExchange.class);
-                m.setAccessible(true);
-            } catch (NoSuchMethodException | SecurityException ex) {
-                throw new RuntimeException("could not find ServerFixedLengthStreamSinkConduit.reset method", ex);
+            if (FIXED_LENGTH_RESET == null) {
+                throw new RuntimeException("could not find ServerFixedLengthStreamSinkConduit.reset method");
             }
-
             try {
-                m.invoke(next, length, exchange);
+                FIXED_LENGTH_RESET.invoke(next, length, exchange);
             } catch (Throwable ex) {
-                throw new RuntimeException("could not access BUFFERED_REQUEST_DATA field", ex);
+                throw new RuntimeException("could not invoke ServerFixedLengthStreamSinkConduit.reset method", ex);
             }
         }
     }
 
+    /**
+     * Looks up the (private) reset method of {@link ServerFixedLengthStreamSinkConduit} once per JVM.
+     */
+    private static MethodHandle findFixedLengthReset() {
+        try {
+            Method m = ServerFixedLengthStreamSinkConduit.class.getDeclaredMethod(
+                "reset",
+                long.class,
+                HttpServerExchange.class);
+            m.setAccessible(true);
+            return MethodHandles.lookup().unreflect(m);
+        } catch (NoSuchMethodException | SecurityException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    public enum InjectionMode {
+        /**
+         * Buffers the complete response, injects the script and updates the Content-Length.
+         */
+        Buffered,
+        /**
+         * Passes the response through as it arrives and injects the script after the `<head>` tag.
+         */
+        Streaming
+    }
+
+    /**
+     * @param scriptPath            the path of the script to inject
+     * @param mode                  the injection mode
+     * @param encoding              the encoding (gzip or deflate) to use for the response sent to the client, or
+     *                              null to send an uncompressed response. When non-null, the response of the app
+     *                              may be encoded using the same encoding, see {@link #negotiateEncoding(String)}.
+     * @param maxBufferSize         the maximum number of bytes to buffer in {@link InjectionMode#Buffered} mode, or -1
+     * @param onBufferLimitExceeded called when a response is not injected because it exceeds the maximum buffer size
+     */
+    public record Options(String scriptPath, InjectionMode mode, String encoding, long maxBufferSize, Runnable onBufferLimitExceeded) {
+    }
+
 }
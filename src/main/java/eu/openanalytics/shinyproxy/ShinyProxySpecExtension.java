@@ -53,6 +53,10 @@ public class ShinyProxySpecExtension extends AbstractSpecExtension {
 
     Boolean shinyForceFullReload;
 
+    String iframeScriptInjectionMaxBufferSize;
+
+    String readinessLogPattern;
+
     @Builder.Default
     SpelField.Integer maxInstances = new SpelField.Integer();
 
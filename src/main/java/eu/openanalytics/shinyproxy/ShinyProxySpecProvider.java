@@ -45,25 +45,36 @@ import eu.openanalytics.shinyproxy.runtimevalues.ShinyForceFullReloadKey;
 import eu.openanalytics.shinyproxy.runtimevalues.TrackAppUrl;
 import eu.openanalytics.shinyproxy.runtimevalues.WebSocketReconnectionModeKey;
 import eu.openanalytics.shinyproxy.runtimevalues.WebsocketReconnectionMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.util.unit.DataSize;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
 
 /**
  * This component converts proxy specs from the 'ShinyProxy notation' into the 'ContainerProxy' notation.
@@ -79,13 +90,30 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
 
     private static final String PROP_DEFAULT_MAX_INSTANCES = "proxy.default-max-instances";
     private static final String PROP_DEFAULT_ALWAYS_SWITCH_INSTANCE = "proxy.default-always-switch-instance";
+    private static final long MAX_INSTANCES_CACHE_SIZE = 100_000;
+    private static final String PROP_IFRAME_SCRIPT_INJECTION_MAX_BUFFER_SIZE = "proxy.iframe-script-injection-max-buffer-size";
+    private static final String PROP_DEFAULT_READINESS_LOG_PATTERN = "proxy.default-readiness-log-pattern";
+    // below this number of specs, the overhead of the fork-join pool is larger than the gain of processing the specs in parallel
+    private static final int PARALLEL_THRESHOLD = 100;
+    private static final Pattern STRING_LITERAL_PATTERN = Pattern.compile("'(?:[^']|'')*'");
+    // the tokens of a max-instances expression that only depends on the groups of the user, see #dependsOnUserId
+    private static final Pattern GROUPS_ONLY_TOKEN_PATTERN = Pattern.compile(
+        "\\s+|''|\\d+|groups\\b|\\.(?:contains|containsAll|isEmpty|size)\\b|(?:and|or|not|true|false)\\b|&&|\\|\\||[!=<>]=?|[-+(){}\\[\\],?:]");
     private static Environment environment;
-    private final Map<String, ProxySpec> specsMap = new HashMap<>();
-    private final Cache<String, Map<String, Integer>> maxInstancesCache;
+    private final Cache<MaxInstancesKey, Integer> maxInstancesCache;
+    private final ConcurrentHashMap<String, Integer> constantMaxInstances = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> maxInstancesDependsOnUserId = new ConcurrentHashMap<>();
+    private final StartupTimings startupTimings = new StartupTimings();
+    private final ConcurrentHashMap<String, Pattern> readinessLogPatterns = new ConcurrentHashMap<>();
+    private final Logger logger = LogManager.getLogger(getClass());
+    // the specs and template groups are only used while binding the configuration, afterwards only the snapshot is used
     private List<ProxySpec> specs = new ArrayList<>();
     private List<TemplateGroup> templateGroups = new ArrayList<>();
+    private volatile SpecSnapshot snapshot = SpecSnapshot.EMPTY;
     private String defaultMaxInstances;
     private Boolean defaultAlwaysSwitchInstance;
+    private long defaultIframeScriptInjectionMaxBufferSize;
+    private String defaultReadinessLogPattern;
     @Inject
     private SpecExpressionResolver expressionResolver;
 
@@ -96,11 +124,16 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
     @Inject
     private List<ISpecExtensionProvider<?>> specExtensionProviders;
 
+    @Inject
+    private MeterRegistry meterRegistry;
+
     public ShinyProxySpecProvider() {
         // cache maxInstances results for (at least) 60 minutes, since this never changes during the lifetime of a session
         maxInstancesCache = Caffeine.newBuilder()
             .scheduler(Scheduler.systemScheduler())
             .expireAfterAccess(60, TimeUnit.MINUTES)
+            .maximumSize(MAX_INSTANCES_CACHE_SIZE)
+            .recordStats()
             .build();
     }
 
@@ -111,37 +144,136 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
 
     @PostConstruct
     public void afterPropertiesSet() {
-        this.specs.stream().collect(Collectors.groupingBy(ProxySpec::getId)).forEach((id, duplicateSpecs) -> {
-            if (duplicateSpecs.size() > 1) throw new IllegalArgumentException(String.format("Configuration error: spec with id '%s' is defined multiple times", id));
-        });
         defaultMaxInstances = environment.getProperty(PROP_DEFAULT_MAX_INSTANCES, String.class, "1");
+        CaffeineCacheMetrics.monitor(meterRegistry, maxInstancesCache, "shinyproxy.max-instances");
         defaultAlwaysSwitchInstance = environment.getProperty(PROP_DEFAULT_ALWAYS_SWITCH_INSTANCE, Boolean.class, false);
-        specs.forEach(ProxySpec::setContainerIndex);
-        specs.forEach(spec -> specsMap.put(spec.getId(), spec));
-        for (ISpecExtensionProvider<?> specExtensionProvider : specExtensionProviders) {
-            if (specExtensionProvider.getSpecs() != null) {
-                for (ISpecExtension specExtension : specExtensionProvider.getSpecs()) {
-                    getSpec(specExtension.getId()).addSpecExtension(specExtension);
+        defaultReadinessLogPattern = environment.getProperty(PROP_DEFAULT_READINESS_LOG_PATTERN);
+        if (defaultReadinessLogPattern != null) {
+            getReadinessLogPattern(defaultReadinessLogPattern);
+        }
+        defaultIframeScriptInjectionMaxBufferSize = parseMaxBufferSize(environment.getProperty(PROP_IFRAME_SCRIPT_INJECTION_MAX_BUFFER_SIZE, String.class, "16MB"));
+        List<List<? extends ISpecExtension>> specExtensions = startupTimings.time("load spec extensions", () -> {
+            List<List<? extends ISpecExtension>> result = new ArrayList<>();
+            for (ISpecExtensionProvider<?> specExtensionProvider : specExtensionProviders) {
+                result.add(specExtensionProvider.getSpecs());
+            }
+            return result;
+        });
+        SpecSnapshot newSnapshot = createSnapshot(specs, templateGroups, specExtensions, startupTimings);
+        validateSnapshot(newSnapshot);
+        snapshot = newSnapshot;
+        logger.info("Loaded {} specs: {}", specs.size(), startupTimings);
+    }
+
+    /**
+     * Replaces the specs (e.g. after reloading the configuration), see {@link SpecReloadService}.
+     * The new specs are validated before they replace the current specs, if they are invalid an
+     * {@link IllegalArgumentException} is thrown and the current specs are kept.
+     *
+     * @param newSpecs          the new specs
+     * @param newTemplateGroups the new template groups
+     * @param specExtensions    the new spec extensions, one list for every {@link ISpecExtensionProvider}
+     * @return the ids of the specs that were added, changed or removed
+     */
+    public synchronized Set<String> replaceSpecs(List<ProxySpec> newSpecs, List<TemplateGroup> newTemplateGroups, List<List<? extends ISpecExtension>> specExtensions) {
+        SpecSnapshot newSnapshot = createSnapshot(newSpecs, newTemplateGroups, specExtensions, new StartupTimings());
+        validateSnapshot(newSnapshot);
+        SpecSnapshot oldSnapshot = snapshot;
+
+        Set<String> changedSpecIds = new HashSet<>();
+        for (ProxySpec spec : newSnapshot.specs()) {
+            if (!Objects.equals(oldSnapshot.specsById().get(spec.getId()), spec)) {
+                changedSpecIds.add(spec.getId());
+            }
+        }
+        for (ProxySpec spec : oldSnapshot.specs()) {
+            if (!newSnapshot.specsById().containsKey(spec.getId())) {
+                changedSpecIds.add(spec.getId());
+            }
+        }
+
+        snapshot = newSnapshot;
+
+        // only invalidate the derived values of the changed specs
+        constantMaxInstances.keySet().removeAll(changedSpecIds);
+        maxInstancesDependsOnUserId.keySet().removeAll(changedSpecIds);
+        maxInstancesCache.asMap().keySet().removeIf(key -> changedSpecIds.contains(key.specId()));
+        return changedSpecIds;
+    }
+
+    private static SpecSnapshot createSnapshot(List<ProxySpec> specs, List<TemplateGroup> templateGroups, List<? extends List<? extends ISpecExtension>> specExtensions, StartupTimings timings) {
+        Set<String> specIds = timings.time("validate specs", () -> {
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            stream(specs).map(ProxySpec::getId).filter(id -> !ids.add(id)).findFirst().ifPresent(id -> {
+                throw new IllegalArgumentException(String.format("Configuration error: spec with id '%s' is defined multiple times", id));
+            });
+            stream(specs).forEach(ProxySpec::setContainerIndex);
+            return ids;
+        });
+
+        timings.time("attach spec extensions", () -> {
+            Map<String, List<ISpecExtension>> extensionsBySpec = new HashMap<>();
+            for (List<? extends ISpecExtension> extensions : specExtensions) {
+                if (extensions != null) {
+                    for (ISpecExtension specExtension : extensions) {
+                        if (!specIds.contains(specExtension.getId())) {
+                            throw new IllegalArgumentException(String.format("Configuration error: no spec with id '%s' found", specExtension.getId()));
+                        }
+                        extensionsBySpec.computeIfAbsent(specExtension.getId(), (k) -> new ArrayList<>()).add(specExtension);
+                    }
                 }
             }
+            // every spec is only modified by a single thread
+            stream(specs).forEach(spec -> extensionsBySpec.getOrDefault(spec.getId(), List.of()).forEach(spec::addSpecExtension));
+        });
+
+        return timings.time("index specs", () -> SpecSnapshot.of(specs, templateGroups));
+    }
+
+    /**
+     * Validates the properties of the specs that are not validated while creating the snapshot, both at startup and
+     * when reloading the specs.
+     */
+    private void validateSnapshot(SpecSnapshot snapshot) {
+        snapshot.specs().forEach(this::getReadinessLogPattern);
+    }
+
+    private static <T> Stream<T> stream(List<T> list) {
+        if (list.size() >= PARALLEL_THRESHOLD) {
+            return list.parallelStream();
         }
+        return list.stream();
     }
 
+    /**
+     * @return all specs, the returned list is immutable and shared (i.e. it's not copied)
+     */
     public List<ProxySpec> getSpecs() {
-        return new ArrayList<>(specs);
+        return snapshot.specs();
+    }
+
+    public SpecSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the duration of the phases of loading the specs at startup
+     */
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
     }
 
     public void setSpecs(List<ShinyProxySpec> specs) {
-        this.specs = specs.stream().map(ShinyProxySpec::getProxySpec).toList();
+        this.specs = startupTimings.time("build specs", () -> stream(specs).map(ShinyProxySpec::getProxySpec).toList());
     }
 
     public ProxySpec getSpec(String id) {
         if (id == null || id.isEmpty()) return null;
-        return specsMap.get(id);
+        return snapshot.specsById().get(id);
     }
 
     public List<TemplateGroup> getTemplateGroups() {
-        return templateGroups;
+        return snapshot.templateGroups();
     }
 
     public void setTemplateGroups(List<TemplateGroup> templateGroups) {
@@ -170,34 +302,47 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
         return runtimeValues;
     }
 
+    /**
+     * Resolves the `max-instances` property of the given spec for the current user.
+     * When neither the spec nor the default contains an expression, the value is the same for every user and is
+     * resolved once. Otherwise, the value is cached per spec and access profile (the authorities and, unless the
+     * expression only uses the groups of the user, the user id).
+     */
     public Integer getMaxInstancesForSpec(ProxySpec proxySpec) {
-        return getMaxInstances().get(proxySpec.getId());
+        SpelField.Integer maxInstances = proxySpec.getSpecExtension(ShinyProxySpecExtension.class).getMaxInstances();
+        String expression = maxInstances.getOriginalValue() != null ? maxInstances.getOriginalValue() : defaultMaxInstances;
+        if (!expression.contains("#{")) {
+            return constantMaxInstances.computeIfAbsent(proxySpec.getId(), (id) -> resolveMaxInstances(proxySpec, userService.getCurrentAuth()));
+        }
+        Authentication user = userService.getCurrentAuth();
+        List<String> authorities = user.getAuthorities().stream().map(GrantedAuthority::getAuthority).sorted().toList();
+        boolean dependsOnUserId = maxInstancesDependsOnUserId.computeIfAbsent(proxySpec.getId(), (id) -> dependsOnUserId(expression));
+        MaxInstancesKey key = new MaxInstancesKey(proxySpec.getId(), dependsOnUserId ? userService.getCurrentUserId() : null, authorities);
+        return maxInstancesCache.get(key, (k) -> resolveMaxInstances(proxySpec, user));
     }
 
-    public Map<String, Integer> getMaxInstances() {
-        String sessionId = Objects.requireNonNull(RequestContextHolder.getRequestAttributes()).getSessionId();
-        return maxInstancesCache.get(sessionId, s -> {
-            Authentication user = userService.getCurrentAuth();
-            SpecExpressionContext context = SpecExpressionContext.create(
-                user,
-                user.getPrincipal(),
-                user.getCredentials()).build();
-
-            Map<String, Integer> result = new HashMap<>();
-
-            Integer resolvedDefault = expressionResolver.evaluateToInteger(defaultMaxInstances, context);
-
-            for (ProxySpec proxySpec : getSpecs()) {
-                Integer maxInstances = proxySpec.getSpecExtension(ShinyProxySpecExtension.class).getMaxInstances().resolve(expressionResolver, context).getValueOrNull();
-                if (maxInstances != null) {
-                    result.put(proxySpec.getId(), maxInstances);
-                } else {
-                    result.put(proxySpec.getId(), resolvedDefault);
-                }
-            }
+    /**
+     * @return the max instances of the given specs for the current user
+     */
+    public Map<String, Integer> getMaxInstances(List<ProxySpec> proxySpecs) {
+        Map<String, Integer> result = new HashMap<>();
+        for (ProxySpec proxySpec : proxySpecs) {
+            result.put(proxySpec.getId(), getMaxInstancesForSpec(proxySpec));
+        }
+        return result;
+    }
 
-            return result;
-        });
+    private Integer resolveMaxInstances(ProxySpec proxySpec, Authentication user) {
+        SpecExpressionContext context = SpecExpressionContext.create(
+            user,
+            user.getPrincipal(),
+            user.getCredentials()).build();
+
+        Integer maxInstances = proxySpec.getSpecExtension(ShinyProxySpecExtension.class).getMaxInstances().resolve(expressionResolver, context).getValueOrNull();
+        if (maxInstances != null) {
+            return maxInstances;
+        }
+        return expressionResolver.evaluateToInteger(defaultMaxInstances, context);
     }
 
     public Boolean getShinyForceFullReload(ProxySpec proxySpec) {
@@ -209,6 +354,80 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
     }
 
 
+    /**
+     * @return the maximum size (in bytes) of a response in which the iframe script is injected (when using the
+     * buffered injection mode), -1 if there is no maximum
+     */
+    public long getIframeScriptInjectionMaxBufferSize(ProxySpec proxySpec) {
+        if (proxySpec == null) {
+            return defaultIframeScriptInjectionMaxBufferSize;
+        }
+        return snapshot.maxBufferSizes().getOrDefault(proxySpec.getId(), defaultIframeScriptInjectionMaxBufferSize);
+    }
+
+    /**
+     * Checks whether the given max-instances expression may depend on the user (e.g. the user id, principal or a bean),
+     * instead of only on the groups of the user. By default, an expression is considered to depend on the user. Only
+     * the following expressions are considered to depend on the groups alone:
+     * - a constant (i.e. without any `#{...}` template)
+     * - a single `#{...}` template that only references `groups`, using `contains`, `containsAll`, `isEmpty` or `size`,
+     *   combined with string and number literals, inline lists, comparison, boolean and ternary operators.
+     *   For example: `#{groups.contains('admins') ? 5 : 1}`.
+     */
+    static boolean dependsOnUserId(String expression) {
+        if (!expression.contains("#{")) {
+            return false;
+        }
+        String withoutLiterals = STRING_LITERAL_PATTERN.matcher(expression).replaceAll("''").strip();
+        if (!withoutLiterals.startsWith("#{") || !withoutLiterals.endsWith("}")) {
+            return true;
+        }
+        Matcher matcher = GROUPS_ONLY_TOKEN_PATTERN.matcher(withoutLiterals).region(2, withoutLiterals.length() - 1);
+        while (matcher.regionStart() < matcher.regionEnd()) {
+            if (!matcher.lookingAt()) {
+                return true;
+            }
+            matcher.region(matcher.end(), matcher.regionEnd());
+        }
+        return false;
+    }
+
+    static long parseMaxBufferSize(String maxBufferSize) {
+        if (maxBufferSize.equals("-1")) {
+            return -1;
+        }
+        try {
+            return DataSize.parse(maxBufferSize).toBytes();
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("Configuration error: invalid value for iframe-script-injection-max-buffer-size: '%s'", maxBufferSize), ex);
+        }
+    }
+
+    /**
+     * @return the pattern that indicates (when a line of the logs of the container matches it) that the app is ready,
+     * or null if the readiness of the app is only checked using HTTP requests
+     */
+    public Pattern getReadinessLogPattern(ProxySpec proxySpec) {
+        String readinessLogPattern = proxySpec.getSpecExtension(ShinyProxySpecExtension.class).getReadinessLogPattern();
+        if (readinessLogPattern == null) {
+            readinessLogPattern = defaultReadinessLogPattern;
+        }
+        if (readinessLogPattern == null || readinessLogPattern.isBlank()) {
+            return null;
+        }
+        return getReadinessLogPattern(readinessLogPattern);
+    }
+
+    private Pattern getReadinessLogPattern(String readinessLogPattern) {
+        return readinessLogPatterns.computeIfAbsent(readinessLogPattern, (p) -> {
+            try {
+                return Pattern.compile(p);
+            } catch (PatternSyntaxException ex) {
+                throw new IllegalArgumentException(String.format("Configuration error: invalid value for readiness-log-pattern: '%s'", p), ex);
+            }
+        });
+    }
+
     public Boolean getHideNavbarOnMainPageLink(ProxySpec proxySpec) {
         Boolean hideNavbarOnMainPageLink = proxySpec.getSpecExtension(ShinyProxySpecExtension.class).getHideNavbarOnMainPageLink();
         if (hideNavbarOnMainPageLink != null) {
@@ -225,212 +444,254 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
         return defaultAlwaysSwitchInstance;
     }
 
+    /**
+     * Binding object of a spec in the ShinyProxy notation.
+     * The properties are stored in plain fields, the {@link ProxySpec} is only built by {@link #getProxySpec()}.
+     * Only properties that are set are passed to the builders, such that the defaults of the builders are kept.
+     */
     public static class ShinyProxySpec {
 
-        private final ProxySpec.ProxySpecBuilder proxySpec;
-        private final ContainerSpec.ContainerSpecBuilder containerSpec;
-        private final AccessControl accessControl;
-        private final PortMapping.PortMappingBuilder defaultPortMapping;
-        private List<PortMapping> additionalPortMappings = new ArrayList<>();
+        private static final ProxySpec DEFAULT_PROXY_SPEC = ProxySpec.builder().build();
+        private static final ContainerSpec DEFAULT_CONTAINER_SPEC = ContainerSpec.builder().build();
+        private static final PortMapping DEFAULT_PORT_MAPPING = PortMapping.builder().name("default").port(3838).build();
 
-        public ShinyProxySpec() {
-            proxySpec = ProxySpec.builder();
-            containerSpec = ContainerSpec.builder();
-            accessControl = new AccessControl();
-            defaultPortMapping = PortMapping.builder().name("default").port(3838);
-            proxySpec.accessControl(accessControl);
-        }
+        private final AccessControl accessControl = new AccessControl();
+        private List<PortMapping> additionalPortMappings = new ArrayList<>();
+        private String id;
+        private String displayName;
+        private String description;
+        private String logoURL;
+        private String logoWidth;
+        private String logoHeight;
+        private String logoStyle;
+        private String logoClasses;
+        private String faviconPath;
+        private SpelField.String containerImage;
+        private SpelField.StringList containerCmd;
+        private SpelField.StringMap containerEnv;
+        private SpelField.String containerEnvFile;
+        private SpelField.String containerNetwork;
+        private SpelField.StringList containerNetworkConnections;
+        private SpelField.StringList containerDns;
+        private SpelField.StringList containerVolumes;
+        private SpelField.String containerMemoryRequest;
+        private SpelField.String containerMemoryLimit;
+        private SpelField.String containerCpuRequest;
+        private SpelField.String containerCpuLimit;
+        private Boolean containerPrivileged;
+        private SpelField.StringMap labels;
+        private Integer port;
+        private SpelField.String targetPath;
+        // dockerSwarmSecrets, parameters and dockerDeviceRequests have the same defaults as the builders of ContainerSpec and ProxySpec
+        private List<DockerSwarmSecret> dockerSwarmSecrets = new ArrayList<>();
+        private String dockerRegistryDomain;
+        private String dockerRegistryUsername;
+        private String dockerRegistryPassword;
+        private Parameters parameters = ProxySpec.builder().build().getParameters();
+        private SpelField.Long maxLifetime;
+        private Boolean stopOnLogout;
+        private SpelField.Long heartbeatTimeout;
+        private Boolean addDefaultHttpHeaders;
+        private SpelField.StringMap httpHeaders;
+        private CacheHeadersMode cacheHeadersMode;
+        private Integer maxTotalInstances;
+        private SpelField.String resourceName;
+        private SpelField.String dockerRuntime;
+        private List<DockerDeviceRequest> dockerDeviceRequests = new ArrayList<>();
+        private SpelField.String dockerUser;
+        private SpelField.String dockerIpc;
+        private SpelField.StringList dockerGroupAdd;
 
         public String getId() {
-            return proxySpec.build().getId();
+            return id;
         }
 
         public void setId(String id) {
-            proxySpec.id(id);
+            this.id = id;
         }
 
         public String getDisplayName() {
-            return proxySpec.build().getDisplayName();
+            return displayName;
         }
 
         public void setDisplayName(String displayName) {
-            proxySpec.displayName(displayName);
+            this.displayName = displayName;
         }
 
         public String getDescription() {
-            return proxySpec.build().getDescription();
+            return description;
         }
 
         public void setDescription(String description) {
-            proxySpec.description(description);
+            this.description = description;
         }
 
         public String getLogoURL() {
-            return proxySpec.build().getLogoURL();
+            return logoURL;
         }
 
         public void setLogoURL(String logoURL) {
-            proxySpec.logoURL(logoURL);
+            this.logoURL = logoURL;
         }
 
         public String getLogoWidth() {
-            return proxySpec.build().getLogoWidth();
+            return logoWidth;
         }
 
-        public void setLogoWidth(String logoURL) {
-            proxySpec.logoWidth(logoURL);
+        public void setLogoWidth(String logoWidth) {
+            this.logoWidth = logoWidth;
         }
 
         public String getLogoHeight() {
-            return proxySpec.build().getLogoHeight();
+            return logoHeight;
         }
 
-        public void setLogoHeight(String logoURL) {
-            proxySpec.logoHeight(logoURL);
+        public void setLogoHeight(String logoHeight) {
+            this.logoHeight = logoHeight;
         }
 
         public String getLogoStyle() {
-            return proxySpec.build().getLogoStyle();
+            return logoStyle;
         }
 
-        public void setLogoStyle(String logoURL) {
-            proxySpec.logoStyle(logoURL);
+        public void setLogoStyle(String logoStyle) {
+            this.logoStyle = logoStyle;
         }
 
         public String getLogoClasses() {
-            return proxySpec.build().getLogoClasses();
+            return logoClasses;
         }
 
-        public void setLogoClasses(String logoURL) {
-            proxySpec.logoClasses(logoURL);
+        public void setLogoClasses(String logoClasses) {
+            this.logoClasses = logoClasses;
         }
 
         public String getFaviconPath() {
-            return proxySpec.build().getFaviconPath();
+            return faviconPath;
         }
 
         public void setFaviconPath(String faviconPath) {
-            proxySpec.faviconPath(faviconPath);
+            this.faviconPath = faviconPath;
         }
 
         public SpelField.String getContainerImage() {
-            return containerSpec.build().getImage();
+            return containerImage != null ? containerImage : DEFAULT_CONTAINER_SPEC.getImage();
         }
 
         public void setContainerImage(SpelField.String containerImage) {
-            containerSpec.image(containerImage);
+            this.containerImage = containerImage;
         }
 
         public SpelField.StringList getContainerCmd() {
-            return containerSpec.build().getCmd();
+            return containerCmd != null ? containerCmd : DEFAULT_CONTAINER_SPEC.getCmd();
         }
 
         public void setContainerCmd(List<String> containerCmd) {
-            containerSpec.cmd(new SpelField.StringList(containerCmd));
+            this.containerCmd = new SpelField.StringList(containerCmd);
         }
 
         public SpelField.StringMap getContainerEnv() {
-            return containerSpec.build().getEnv();
+            return containerEnv != null ? containerEnv : DEFAULT_CONTAINER_SPEC.getEnv();
         }
 
         public void setContainerEnv(Map<String, String> containerEnv) {
-            containerSpec.env(new SpelField.StringMap(containerEnv));
+            this.containerEnv = new SpelField.StringMap(containerEnv);
         }
 
         public SpelField.String getContainerEnvFile() {
-            return containerSpec.build().getEnvFile();
+            return containerEnvFile != null ? containerEnvFile : DEFAULT_CONTAINER_SPEC.getEnvFile();
         }
 
         public void setContainerEnvFile(SpelField.String containerEnvFile) {
-            containerSpec.envFile(containerEnvFile);
+            this.containerEnvFile = containerEnvFile;
         }
 
         public SpelField.String getContainerNetwork() {
-            return containerSpec.build().getNetwork();
+            return containerNetwork != null ? containerNetwork : DEFAULT_CONTAINER_SPEC.getNetwork();
         }
 
         public void setContainerNetwork(SpelField.String containerNetwork) {
-            containerSpec.network(containerNetwork);
+            this.containerNetwork = containerNetwork;
         }
 
         public SpelField.StringList getContainerNetworkConnections() {
-            return containerSpec.build().getNetworkConnections();
+            return containerNetworkConnections != null ? containerNetworkConnections : DEFAULT_CONTAINER_SPEC.getNetworkConnections();
         }
 
         public void setContainerNetworkConnections(List<String> containerNetworkConnections) {
-            containerSpec.networkConnections(new SpelField.StringList(containerNetworkConnections));
+            this.containerNetworkConnections = new SpelField.StringList(containerNetworkConnections);
         }
 
         public SpelField.StringList getContainerDns() {
-            return containerSpec.build().getDns();
+            return containerDns != null ? containerDns : DEFAULT_CONTAINER_SPEC.getDns();
         }
 
         public void setContainerDns(List<String> containerDns) {
-            containerSpec.dns(new SpelField.StringList(containerDns));
+            this.containerDns = new SpelField.StringList(containerDns);
         }
 
         public SpelField.StringList getContainerVolumes() {
-            return containerSpec.build().getVolumes();
+            return containerVolumes != null ? containerVolumes : DEFAULT_CONTAINER_SPEC.getVolumes();
         }
 
         public void setContainerVolumes(List<String> containerVolumes) {
-            containerSpec.volumes(new SpelField.StringList(containerVolumes));
+            this.containerVolumes = new SpelField.StringList(containerVolumes);
         }
 
         public SpelField.String getContainerMemoryRequest() {
-            return containerSpec.build().getMemoryRequest();
+            return containerMemoryRequest != null ? containerMemoryRequest : DEFAULT_CONTAINER_SPEC.getMemoryRequest();
         }
 
         public void setContainerMemoryRequest(SpelField.String containerMemoryRequest) {
-            containerSpec.memoryRequest(containerMemoryRequest);
+            this.containerMemoryRequest = containerMemoryRequest;
         }
 
         public SpelField.String getContainerMemoryLimit() {
-            return containerSpec.build().getMemoryLimit();
+            return containerMemoryLimit != null ? containerMemoryLimit : DEFAULT_CONTAINER_SPEC.getMemoryLimit();
         }
 
         public void setContainerMemoryLimit(SpelField.String containerMemoryLimit) {
-            containerSpec.memoryLimit(containerMemoryLimit);
+            this.containerMemoryLimit = containerMemoryLimit;
         }
 
         public SpelField.String getContainerCpuRequest() {
-            return containerSpec.build().getCpuRequest();
+            return containerCpuRequest != null ? containerCpuRequest : DEFAULT_CONTAINER_SPEC.getCpuRequest();
         }
 
         public void setContainerCpuRequest(SpelField.String containerCpuRequest) {
-            containerSpec.cpuRequest(containerCpuRequest);
+            this.containerCpuRequest = containerCpuRequest;
         }
 
         public SpelField.String getContainerCpuLimit() {
-            return containerSpec.build().getCpuLimit();
+            return containerCpuLimit != null ? containerCpuLimit : DEFAULT_CONTAINER_SPEC.getCpuLimit();
         }
 
         public void setContainerCpuLimit(SpelField.String containerCpuLimit) {
-            containerSpec.cpuLimit(containerCpuLimit);
+            this.containerCpuLimit = containerCpuLimit;
         }
 
         public boolean isContainerPrivileged() {
-            return containerSpec.build().isPrivileged();
+            return containerPrivileged != null ? containerPrivileged : DEFAULT_CONTAINER_SPEC.isPrivileged();
         }
 
         public void setContainerPrivileged(boolean containerPrivileged) {
-            containerSpec.privileged(containerPrivileged);
+            this.containerPrivileged = containerPrivileged;
         }
 
         public SpelField.StringMap getLabels() {
-            return containerSpec.build().getLabels();
+            return labels != null ? labels : DEFAULT_CONTAINER_SPEC.getLabels();
         }
 
         public void setLabels(Map<String, String> labels) {
-            containerSpec.labels(new SpelField.StringMap(labels));
+            this.labels = new SpelField.StringMap(labels);
         }
 
         public int getPort() {
-            return defaultPortMapping.build().getPort();
+            return port != null ? port : DEFAULT_PORT_MAPPING.getPort();
         }
 
         public void setPort(int port) {
-            defaultPortMapping.port(port);
+            this.port = port;
         }
 
         public String[] getAccessGroups() {
@@ -442,11 +703,11 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
         }
 
         public SpelField.String getTargetPath() {
-            return defaultPortMapping.build().getTargetPath();
+            return targetPath != null ? targetPath : DEFAULT_PORT_MAPPING.getTargetPath();
         }
 
         public void setTargetPath(SpelField.String targetPath) {
-            defaultPortMapping.targetPath(targetPath);
+            this.targetPath = targetPath;
         }
 
         public String[] getAccessUsers() {
@@ -474,67 +735,67 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
         }
 
         public List<DockerSwarmSecret> getDockerSwarmSecrets() {
-            return containerSpec.build().getDockerSwarmSecrets();
+            return dockerSwarmSecrets;
         }
 
         public void setDockerSwarmSecrets(List<DockerSwarmSecret> dockerSwarmSecrets) {
-            containerSpec.dockerSwarmSecrets(dockerSwarmSecrets);
+            this.dockerSwarmSecrets = dockerSwarmSecrets;
         }
 
         public String getDockerRegistryDomain() {
-            return containerSpec.build().getDockerRegistryDomain();
+            return dockerRegistryDomain;
         }
 
         public void setDockerRegistryDomain(String dockerRegistryDomain) {
-            containerSpec.dockerRegistryDomain(dockerRegistryDomain);
+            this.dockerRegistryDomain = dockerRegistryDomain;
         }
 
         public String getDockerRegistryUsername() {
-            return containerSpec.build().getDockerRegistryUsername();
+            return dockerRegistryUsername;
         }
 
         public void setDockerRegistryUsername(String dockerRegistryUsername) {
-            containerSpec.dockerRegistryUsername(dockerRegistryUsername);
+            this.dockerRegistryUsername = dockerRegistryUsername;
         }
 
         public String getDockerRegistryPassword() {
-            return containerSpec.build().getDockerRegistryPassword();
+            return dockerRegistryPassword;
         }
 
         public void setDockerRegistryPassword(String dockerRegistryPassword) {
-            containerSpec.dockerRegistryPassword(dockerRegistryPassword);
+            this.dockerRegistryPassword = dockerRegistryPassword;
         }
 
         public Parameters getParameters() {
-            return proxySpec.build().getParameters();
+            return parameters;
         }
 
         public void setParameters(Parameters parameters) {
-            proxySpec.parameters(parameters);
+            this.parameters = parameters;
         }
 
         public SpelField.Long getMaxLifetime() {
-            return proxySpec.build().getMaxLifeTime();
+            return maxLifetime != null ? maxLifetime : DEFAULT_PROXY_SPEC.getMaxLifeTime();
         }
 
         public void setMaxLifetime(SpelField.Long maxLifetime) {
-            proxySpec.maxLifeTime(maxLifetime);
+            this.maxLifetime = maxLifetime;
         }
 
         public Boolean getStopOnLogout() {
-            return proxySpec.build().getStopOnLogout();
+            return stopOnLogout != null ? stopOnLogout : DEFAULT_PROXY_SPEC.getStopOnLogout();
         }
 
         public void setStopOnLogout(Boolean stopOnLogout) {
-            proxySpec.stopOnLogout(stopOnLogout);
+            this.stopOnLogout = stopOnLogout;
         }
 
         public SpelField.Long getHeartbeatTimeout() {
-            return proxySpec.build().getHeartbeatTimeout();
+            return heartbeatTimeout != null ? heartbeatTimeout : DEFAULT_PROXY_SPEC.getHeartbeatTimeout();
         }
 
         public void setHeartbeatTimeout(SpelField.Long heartbeatTimeout) {
-            proxySpec.heartbeatTimeout(heartbeatTimeout);
+            this.heartbeatTimeout = heartbeatTimeout;
         }
 
         public List<PortMapping> getAdditionalPortMappings() {
@@ -546,88 +807,224 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
         }
 
         public boolean getAddDefaultHttpHeaders() {
-            return proxySpec.build().getAddDefaultHttpHeaders();
+            return addDefaultHttpHeaders != null ? addDefaultHttpHeaders : DEFAULT_PROXY_SPEC.getAddDefaultHttpHeaders();
         }
 
-        public void setAddDefaultHttpHeaders(boolean addDefaultHeaders) {
-            proxySpec.addDefaultHttpHeaders(addDefaultHeaders);
+        public void setAddDefaultHttpHeaders(boolean addDefaultHttpHeaders) {
+            this.addDefaultHttpHeaders = addDefaultHttpHeaders;
         }
 
         public SpelField.StringMap getHttpHeaders() {
-            return proxySpec.build().getHttpHeaders();
+            return httpHeaders != null ? httpHeaders : DEFAULT_PROXY_SPEC.getHttpHeaders();
         }
 
-        public void setHttpHeaders(Map<String, String> headers) {
-            proxySpec.httpHeaders(new SpelField.StringMap(headers));
+        public void setHttpHeaders(Map<String, String> httpHeaders) {
+            this.httpHeaders = new SpelField.StringMap(httpHeaders);
         }
 
         public CacheHeadersMode getCacheHeadersMode() {
-            return proxySpec.build().getCacheHeadersMode();
+            return cacheHeadersMode != null ? cacheHeadersMode : DEFAULT_PROXY_SPEC.getCacheHeadersMode();
         }
 
         public void setCacheHeadersMode(CacheHeadersMode cacheHeadersMode) {
-            proxySpec.cacheHeadersMode(cacheHeadersMode);
+            this.cacheHeadersMode = cacheHeadersMode;
         }
 
         public int getMaxTotalInstances() {
-            return proxySpec.build().getMaxTotalInstances();
+            return maxTotalInstances != null ? maxTotalInstances : DEFAULT_PROXY_SPEC.getMaxTotalInstances();
         }
 
         public void setMaxTotalInstances(int maxTotalInstances) {
-            proxySpec.maxTotalInstances(maxTotalInstances);
+            this.maxTotalInstances = maxTotalInstances;
         }
 
         public SpelField.String getResourceName() {
-            return containerSpec.build().getResourceName();
+            return resourceName != null ? resourceName : DEFAULT_CONTAINER_SPEC.getResourceName();
         }
 
         public void setResourceName(SpelField.String resourceName) {
-            containerSpec.resourceName(resourceName);
-        }
-
-        public void setDockerRuntime(SpelField.String runtime) {
-            containerSpec.dockerRuntime(runtime);
+            this.resourceName = resourceName;
         }
 
         public SpelField.String getDockerRuntime() {
-            return containerSpec.build().getDockerRuntime();
+            return dockerRuntime != null ? dockerRuntime : DEFAULT_CONTAINER_SPEC.getDockerRuntime();
         }
 
-        public void setDockerDeviceRequests(List<DockerDeviceRequest> dockerDeviceRequests) {
-            containerSpec.dockerDeviceRequests(dockerDeviceRequests);
+        public void setDockerRuntime(SpelField.String dockerRuntime) {
+            this.dockerRuntime = dockerRuntime;
         }
 
         public List<DockerDeviceRequest> getDockerDeviceRequests() {
-            return containerSpec.build().getDockerDeviceRequests();
+            return dockerDeviceRequests;
         }
 
-        public void setDockerUser(SpelField.String user) {
-            containerSpec.dockerUser(user);
+        public void setDockerDeviceRequests(List<DockerDeviceRequest> dockerDeviceRequests) {
+            this.dockerDeviceRequests = dockerDeviceRequests;
         }
 
         public SpelField.String getDockerUser() {
-            return containerSpec.build().getDockerUser();
+            return dockerUser != null ? dockerUser : DEFAULT_CONTAINER_SPEC.getDockerUser();
         }
 
-        public void setDockerIpc(SpelField.String ipc) {
-            containerSpec.dockerIpc(ipc);
+        public void setDockerUser(SpelField.String dockerUser) {
+            this.dockerUser = dockerUser;
         }
 
         public SpelField.String getDockerIpc() {
-            return containerSpec.build().getDockerIpc();
+            return dockerIpc != null ? dockerIpc : DEFAULT_CONTAINER_SPEC.getDockerIpc();
         }
 
-        public void setDockerGroupAdd(List<String> dockerGroupAdd) {
-            containerSpec.dockerGroupAdd(new SpelField.StringList(dockerGroupAdd));
+        public void setDockerIpc(SpelField.String dockerIpc) {
+            this.dockerIpc = dockerIpc;
         }
 
         public SpelField.StringList getDockerGroupAdd() {
-            return containerSpec.build().getDockerGroupAdd();
+            return dockerGroupAdd != null ? dockerGroupAdd : DEFAULT_CONTAINER_SPEC.getDockerGroupAdd();
+        }
+
+        public void setDockerGroupAdd(List<String> dockerGroupAdd) {
+            this.dockerGroupAdd = new SpelField.StringList(dockerGroupAdd);
         }
 
         public ProxySpec getProxySpec() {
-            additionalPortMappings.add(defaultPortMapping.build());
-            containerSpec.portMapping(additionalPortMappings);
+            PortMapping.PortMappingBuilder portMapping = PortMapping.builder().name("default").port(3838);
+            if (port != null) {
+                portMapping.port(port);
+            }
+            if (targetPath != null) {
+                portMapping.targetPath(targetPath);
+            }
+            List<PortMapping> portMappings = new ArrayList<>(additionalPortMappings);
+            portMappings.add(portMapping.build());
+
+            ContainerSpec.ContainerSpecBuilder containerSpec = ContainerSpec.builder();
+            if (containerImage != null) {
+                containerSpec.image(containerImage);
+            }
+            if (containerCmd != null) {
+                containerSpec.cmd(containerCmd);
+            }
+            if (containerEnv != null) {
+                containerSpec.env(containerEnv);
+            }
+            if (containerEnvFile != null) {
+                containerSpec.envFile(containerEnvFile);
+            }
+            if (containerNetwork != null) {
+                containerSpec.network(containerNetwork);
+            }
+            if (containerNetworkConnections != null) {
+                containerSpec.networkConnections(containerNetworkConnections);
+            }
+            if (containerDns != null) {
+                containerSpec.dns(containerDns);
+            }
+            if (containerVolumes != null) {
+                containerSpec.volumes(containerVolumes);
+            }
+            if (containerMemoryRequest != null) {
+                containerSpec.memoryRequest(containerMemoryRequest);
+            }
+            if (containerMemoryLimit != null) {
+                containerSpec.memoryLimit(containerMemoryLimit);
+            }
+            if (containerCpuRequest != null) {
+                containerSpec.cpuRequest(containerCpuRequest);
+            }
+            if (containerCpuLimit != null) {
+                containerSpec.cpuLimit(containerCpuLimit);
+            }
+            if (containerPrivileged != null) {
+                containerSpec.privileged(containerPrivileged);
+            }
+            if (labels != null) {
+                containerSpec.labels(labels);
+            }
+            if (dockerSwarmSecrets != null) {
+                containerSpec.dockerSwarmSecrets(dockerSwarmSecrets);
+            }
+            if (dockerRegistryDomain != null) {
+                containerSpec.dockerRegistryDomain(dockerRegistryDomain);
+            }
+            if (dockerRegistryUsername != null) {
+                containerSpec.dockerRegistryUsername(dockerRegistryUsername);
+            }
+            if (dockerRegistryPassword != null) {
+                containerSpec.dockerRegistryPassword(dockerRegistryPassword);
+            }
+            if (resourceName != null) {
+                containerSpec.resourceName(resourceName);
+            }
+            if (dockerRuntime != null) {
+                containerSpec.dockerRuntime(dockerRuntime);
+            }
+            if (dockerDeviceRequests != null) {
+                containerSpec.dockerDeviceRequests(dockerDeviceRequests);
+            }
+            if (dockerUser != null) {
+                containerSpec.dockerUser(dockerUser);
+            }
+            if (dockerIpc != null) {
+                containerSpec.dockerIpc(dockerIpc);
+            }
+            if (dockerGroupAdd != null) {
+                containerSpec.dockerGroupAdd(dockerGroupAdd);
+            }
+            containerSpec.portMapping(portMappings);
+
+            ProxySpec.ProxySpecBuilder proxySpec = ProxySpec.builder();
+            if (id != null) {
+                proxySpec.id(id);
+            }
+            if (displayName != null) {
+                proxySpec.displayName(displayName);
+            }
+            if (description != null) {
+                proxySpec.description(description);
+            }
+            if (logoURL != null) {
+                proxySpec.logoURL(logoURL);
+            }
+            if (logoWidth != null) {
+                proxySpec.logoWidth(logoWidth);
+            }
+            if (logoHeight != null) {
+                proxySpec.logoHeight(logoHeight);
+            }
+            if (logoStyle != null) {
+                proxySpec.logoStyle(logoStyle);
+            }
+            if (logoClasses != null) {
+                proxySpec.logoClasses(logoClasses);
+            }
+            if (faviconPath != null) {
+                proxySpec.faviconPath(faviconPath);
+            }
+            if (parameters != null) {
+                proxySpec.parameters(parameters);
+            }
+            if (maxLifetime != null) {
+                proxySpec.maxLifeTime(maxLifetime);
+            }
+            if (stopOnLogout != null) {
+                proxySpec.stopOnLogout(stopOnLogout);
+            }
+            if (heartbeatTimeout != null) {
+                proxySpec.heartbeatTimeout(heartbeatTimeout);
+            }
+            if (addDefaultHttpHeaders != null) {
+                proxySpec.addDefaultHttpHeaders(addDefaultHttpHeaders);
+            }
+            if (httpHeaders != null) {
+                proxySpec.httpHeaders(httpHeaders);
+            }
+            if (cacheHeadersMode != null) {
+                proxySpec.cacheHeadersMode(cacheHeadersMode);
+            }
+            if (maxTotalInstances != null) {
+                proxySpec.maxTotalInstances(maxTotalInstances);
+            }
+            proxySpec.accessControl(accessControl);
             proxySpec.containerSpecs(Collections.singletonList(containerSpec.build()));
             return proxySpec.build();
         }
@@ -655,4 +1052,7 @@ public class ShinyProxySpecProvider implements IProxySpecProvider {
         }
     }
 
+    private record MaxInstancesKey(String specId, String userId, List<String> authorities) {
+    }
+
 }
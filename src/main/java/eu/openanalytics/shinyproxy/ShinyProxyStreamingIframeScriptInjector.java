@@ -0,0 +1,356 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Injects a `<script>` tag into the HTML pages of the app, without buffering the response.
+ * The response is passed to the next conduit as it arrives, while a small tokenizer looks for the position to insert
+ * the script: directly after the `<head>` tag or, when the page has no head, before the first `<script>`, `<body>` or
+ * `</head>` tag. Only the bytes of a (possible) tag name are held back, at most {@link #MAX_TAG_LENGTH} bytes.
+ * Once the script is injected, the remaining part of the response is passed through without inspecting it.
+ * If no position is found, the script is appended when the writes are terminated.
+ * Since the length of the response changes, the Content-Length header must be removed before the next conduit is
+ * created, see {@link ShinyProxyIframeScriptInjector#wrap}.
+ */
+public class ShinyProxyStreamingIframeScriptInjector extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+    private static final int MAX_TAG_LENGTH = 16;
+
+    private final byte[] script;
+    private final byte[] tag = new byte[MAX_TAG_LENGTH];
+    private int tagLength = 0;
+    private State state = State.Text;
+    private byte quote = 0;
+    private int dashes = 0;
+    /**
+     * Number of bytes of the source that have been inspected by the tokenizer, but not yet written to the next conduit.
+     */
+    private int inspected = 0;
+    private boolean injectAfterInspected = false;
+    private boolean injected = false;
+    private ByteBuffer pending;
+    private boolean terminated = false;
+    private boolean nextTerminated = false;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param next       the delegate conduit to set
+     * @param scriptPath the path of the script to inject
+     */
+    public ShinyProxyStreamingIframeScriptInjector(StreamSinkConduit next, String scriptPath) {
+        super(next);
+        this.script = ShinyProxyIframeScriptInjector.createScriptTag(scriptPath).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int start = src.position();
+        while (src.hasRemaining() && writePending()) {
+            if (injected) {
+                next.write(src);
+                break;
+            }
+            if (inspected > 0) {
+                int limit = src.limit();
+                src.limit(src.position() + Math.min(inspected, src.remaining()));
+                inspected -= next.write(src);
+                boolean blocked = src.hasRemaining();
+                src.limit(limit);
+                if (blocked) {
+                    // next conduit cannot accept more data
+                    break;
+                }
+                if (inspected == 0 && injectAfterInspected) {
+                    injectAfterInspected = false;
+                    inject(null, false);
+                }
+                continue;
+            }
+            inspect(src);
+        }
+        return src.position() - start;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+        long total = 0;
+        for (int i = offs; i < offs + len; ++i) {
+            total += write(srcs[i]);
+            if (srcs[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int writeFinal(ByteBuffer src) throws IOException {
+        return Conduits.writeFinalBasic(this, src);
+    }
+
+    @Override
+    public long writeFinal(ByteBuffer[] srcs, int offs, int len) throws IOException {
+        return Conduits.writeFinalBasic(this, srcs, offs, len);
+    }
+
+    @Override
+    public long transferFrom(StreamSourceChannel source, long count, ByteBuffer throughBuffer) throws IOException {
+        return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public long transferFrom(FileChannel src, long position, long count) throws IOException {
+        return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public void terminateWrites() throws IOException {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        if (!injected) {
+            // no position found -> append the script (after any held back bytes)
+            ByteBuffer remaining = pending != null ? pending : ByteBuffer.allocate(0);
+            pending = ByteBuffer.allocate(remaining.remaining() + tagLength + script.length)
+                .put(remaining)
+                .put(tag, 0, tagLength)
+                .put(script)
+                .flip();
+            tagLength = 0;
+            injected = true;
+        }
+        finishWrites();
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        if (terminated ? !finishWrites() : !writePending()) {
+            return false;
+        }
+        return next.flush();
+    }
+
+    /**
+     * Runs the tokenizer on the source, starting at its current position. Either marks a number of bytes as
+     * {@link #inspected} (these can be passed through as-is) or consumes the bytes of a tag name into {@link #tag}.
+     */
+    private void inspect(ByteBuffer src) {
+        int pos = src.position();
+        int limit = src.limit();
+        switch (state) {
+            case Text -> {
+                int i = pos;
+                while (i < limit && src.get(i) != '<') {
+                    i++;
+                }
+                if (i > pos) {
+                    inspected = i - pos;
+                } else {
+                    tag[tagLength++] = src.get();
+                    state = State.Tag;
+                }
+            }
+            case Tag -> {
+                while (src.hasRemaining()) {
+                    byte b = src.get(src.position());
+                    if ((isNameCharacter(b) || (b == '/' && tagLength == 1)) && tagLength < MAX_TAG_LENGTH) {
+                        tag[tagLength++] = src.get();
+                        continue;
+                    }
+                    int nameLength = tagLength;
+                    if (b != '<' && tagLength < MAX_TAG_LENGTH) {
+                        // '<' starts a new tag and is inspected separately
+                        tag[tagLength++] = src.get();
+                    }
+                    endOfTagName(nameLength, b);
+                    return;
+                }
+            }
+            case HeadTag -> {
+                int i = pos;
+                while (i < limit) {
+                    byte b = src.get(i++);
+                    if (quote != 0) {
+                        if (b == quote) {
+                            quote = 0;
+                        }
+                    } else if (b == '"' || b == '\'') {
+                        quote = b;
+                    } else if (b == '>') {
+                        injectAfterInspected = true;
+                        break;
+                    }
+                }
+                inspected = i - pos;
+            }
+            case Comment -> {
+                int i = pos;
+                while (i < limit) {
+                    byte b = src.get(i++);
+                    if (b == '>' && dashes >= 2) {
+                        state = State.Text;
+                        break;
+                    }
+                    dashes = b == '-' ? dashes + 1 : 0;
+                }
+                inspected = i - pos;
+            }
+        }
+    }
+
+    /**
+     * Decides what to do with the held back tag, once the end of its name has been reached.
+     *
+     * @param nameLength the length of the tag, including the `<` but excluding the terminator
+     * @param terminator the byte following the name
+     */
+    private void endOfTagName(int nameLength, byte terminator) {
+        String name = new String(tag, 1, nameLength - 1, StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+        boolean complete = terminator == '>' || terminator == '/' || Character.isWhitespace(terminator);
+        if (name.startsWith("!--")) {
+            dashes = 0;
+            for (int i = tagLength - 1; i >= 4 && tag[i] == '-'; i--) {
+                dashes++;
+            }
+            state = tagLength >= 7 && terminator == '>' && tag[tagLength - 2] == '-' && tag[tagLength - 3] == '-' ? State.Text : State.Comment;
+            holdBack();
+        } else if (complete && name.equals("head")) {
+            if (terminator == '>') {
+                inject(tagBytes(), false);
+            } else {
+                state = State.HeadTag;
+                quote = 0;
+                holdBack();
+            }
+        } else if (complete && (name.equals("script") || name.equals("body") || name.equals("/head"))) {
+            inject(tagBytes(), true);
+        } else {
+            state = State.Text;
+            holdBack();
+        }
+    }
+
+    /**
+     * Writes the held back bytes of the tag before any new data.
+     */
+    private void holdBack() {
+        pending = ByteBuffer.wrap(tagBytes());
+        tagLength = 0;
+    }
+
+    private byte[] tagBytes() {
+        byte[] result = new byte[tagLength];
+        System.arraycopy(tag, 0, result, 0, tagLength);
+        return result;
+    }
+
+    /**
+     * Schedules the script to be written, either before or after the given (held back) bytes of the tag.
+     */
+    private void inject(byte[] held, boolean before) {
+        if (held == null) {
+            held = new byte[0];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(held.length + script.length);
+        if (before) {
+            buffer.put(script).put(held);
+        } else {
+            buffer.put(held).put(script);
+        }
+        pending = buffer.flip();
+        tagLength = 0;
+        injected = true;
+    }
+
+    private static boolean isNameCharacter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '!' || b == '-';
+    }
+
+    /**
+     * Writes the pending bytes (i.e. held back bytes and the script) to the next conduit.
+     *
+     * @return whether all pending bytes have been written
+     */
+    private boolean writePending() throws IOException {
+        if (pending == null) {
+            return true;
+        }
+        while (pending.hasRemaining()) {
+            if (next.write(pending) == 0) {
+                // next conduit cannot accept more data, the remaining part is written during the next write or flush
+                return false;
+            }
+        }
+        pending = null;
+        return true;
+    }
+
+    /**
+     * Writes the pending bytes to the next conduit and terminates it once everything is written.
+     *
+     * @return whether all pending bytes have been written
+     */
+    private boolean finishWrites() throws IOException {
+        if (!writePending()) {
+            return false;
+        }
+        if (!nextTerminated) {
+            nextTerminated = true;
+            next.terminateWrites();
+        }
+        return true;
+    }
+
+    private enum State {
+        /**
+         * Outside a tag.
+         */
+        Text,
+        /**
+         * Reading the name of a tag, the bytes are held back.
+         */
+        Tag,
+        /**
+         * Inside the attributes of the head tag, the script is injected after the closing `>`.
+         */
+        HeadTag,
+        /**
+         * Inside a comment.
+         */
+        Comment
+    }
+
+}
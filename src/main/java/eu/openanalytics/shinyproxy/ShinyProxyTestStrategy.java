@@ -20,53 +20,47 @@
  */
 package eu.openanalytics.shinyproxy;
 
-import eu.openanalytics.containerproxy.backend.dispatcher.ProxyDispatcherService;
 import eu.openanalytics.containerproxy.backend.strategy.IProxyTestStrategy;
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
-import eu.openanalytics.containerproxy.service.StructuredLogger;
-import eu.openanalytics.containerproxy.util.Retrying;
-import org.apache.logging.log4j.util.Strings;
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.shinyproxy.runtimevalues.StartupTimeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Primary;
-import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
 import javax.inject.Inject;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 /**
  * This component tests the responsiveness of Shiny containers by making an HTTP GET request to the container's published port (default 3838).
  * If this request does not receive a 200 (OK) response within a configured time limit, the container is considered to be unresponsive.
+ * When a readiness log pattern is configured, the container is also considered to be ready as soon as a line of its logs matches
+ * this pattern (e.g. {@code Listening on http://}), the HTTP requests are kept as fallback.
  */
 @Component
 @Primary
 public class ShinyProxyTestStrategy implements IProxyTestStrategy {
 
-    private final StructuredLogger slog = StructuredLogger.create(getClass());
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    private static final List<Integer> ALLOWED_RESPONSE_CODES = Arrays.asList(200, 301, 302, 303, 307, 308);
 
     @Inject
-    private Environment environment;
+    private HttpReadinessProber httpReadinessProber;
 
     @Inject
-    private ProxyDispatcherService proxyDispatcherService;
+    private LogReadinessWatcher logReadinessWatcher;
 
-    private int totalWaitMs;
-    private int requestTimeout;
+    @Inject
+    private ShinyProxySpecProvider shinyProxySpecProvider;
 
-    @PostConstruct
-    public void init() {
-        totalWaitMs = Integer.parseInt(environment.getProperty("proxy.container-wait-time", "20000"));
-        requestTimeout = Integer.parseInt(environment.getProperty("proxy.container-wait-timeout", "5000"));
-    }
+    @Inject
+    private StartupTimelineService startupTimelineService;
 
     @Override
     public boolean testProxy(Proxy proxy) {
@@ -77,41 +71,51 @@ public class ShinyProxyTestStrategy implements IProxyTestStrategy {
 
         if (proxy.getTargets().isEmpty()) return false;
         URI targetURI = proxy.getTargets().get("");
+        startupTimelineService.mark(proxy, StartupTimeline.Phase.ContainerStarted);
 
-        return Retrying.retry((currentAttempt, maxAttempts) -> {
-            if (proxy.getStatus().isUnavailable()) {
-                // proxy got stopped while loading -> no need to try to connect it since the container will already be deleted
-                return new Retrying.Result(false, false);
+        CompletableFuture<Boolean> httpProbe = httpReadinessProber.probe(proxy, targetURI);
+        CompletableFuture<Boolean> logProbe = watchLogs(proxy);
+        CompletableFuture<Boolean> ready = new CompletableFuture<>();
+        logProbe.thenAccept(matched -> {
+            if (matched) {
+                ready.complete(true);
             }
-            if (currentAttempt > 5) {
-                if (!proxyDispatcherService.getDispatcher(proxy.getSpecId()).isProxyHealthy(proxy)) {
-                    return new Retrying.Result(false, false);
-                }
-            }
-            URL testURL = new URI(targetURI.toString() + "/").toURL();
-            HttpURLConnection connection = ((HttpURLConnection) testURL.openConnection());
-            if (currentAttempt <= 5) {
-                // When the container has only just started (or when the k8s service has only just been created),
-                // it could be that our traffic ends in a black hole, and we need to wait the full 5s seconds of
-                // the timeout. Therefore, we first try a few attempts with a lower timeout. If the container is
-                // fast, this will result in a faster startup. If the container is slow to startup, not time is wasted.
-                connection.setConnectTimeout(200);
-                connection.setReadTimeout(200);
-            } else {
-                connection.setConnectTimeout(requestTimeout);
-                connection.setReadTimeout(requestTimeout);
+        });
+        httpProbe.whenComplete((reachable, throwable) -> ready.complete(throwable == null && reachable));
+
+        try {
+            // the interface requires a blocking call, but no connections are made while waiting for the next attempt
+            // the HTTP probe always completes within its maximum duration, the timeout only guards against bugs
+            boolean result = ready.get(httpReadinessProber.getMaxProbeDuration().plusSeconds(1).toMillis(), TimeUnit.MILLISECONDS);
+            if (result) {
+                startupTimelineService.mark(proxy, StartupTimeline.Phase.Ready);
             }
-            connection.setInstanceFollowRedirects(false);
-            int responseCode = connection.getResponseCode();
-            if (ALLOWED_RESPONSE_CODES.contains(responseCode)) {
-                return Retrying.SUCCESS;
-            } else {
-                if (currentAttempt > 10) {
-                    logger.warn("Received invalid status code '{}' while checking reachability of application at {}, expected one of '{}'", responseCode, targetURI, ALLOWED_RESPONSE_CODES);
-                }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (TimeoutException e) {
+            logger.warn("Timeout while checking readiness of proxy {}", proxy.getId());
+            return false;
+        } finally {
+            httpProbe.cancel(false);
+            logProbe.cancel(false);
+        }
+    }
+
+    private CompletableFuture<Boolean> watchLogs(Proxy proxy) {
+        try {
+            ProxySpec spec = shinyProxySpecProvider.getSpec(proxy.getSpecId());
+            Pattern pattern = spec != null ? shinyProxySpecProvider.getReadinessLogPattern(spec) : null;
+            if (pattern != null) {
+                return logReadinessWatcher.watch(proxy, pattern);
             }
-            return Retrying.FAILURE;
-        }, totalWaitMs, "Checking application reachable at " + targetURI, 10, proxy, slog);
+        } catch (Exception e) {
+            logger.warn("Cannot follow logs of proxy {} to check its readiness, only using HTTP requests", proxy.getId(), e);
+        }
+        return CompletableFuture.completedFuture(false);
     }
 
 }
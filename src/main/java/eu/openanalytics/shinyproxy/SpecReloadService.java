@@ -0,0 +1,185 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.model.spec.ISpecExtension;
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.containerproxy.spec.ISpecExtensionProvider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationPropertiesBinding;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.boot.origin.Origin;
+import org.springframework.boot.origin.OriginLookup;
+import org.springframework.boot.origin.TextResourceOrigin;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.convert.converter.GenericConverter;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reloads the specs from the configuration file, without restarting ShinyProxy.
+ * By default, the configuration file from which the specs were loaded at startup is used.
+ * The `proxy.specs` and `proxy.template-groups` properties of the configuration file are bound in the same way as
+ * during startup (including the spec extensions). When the new specs are valid, they atomically replace the current
+ * specs and a {@link SpecsChangedEvent} is published, such that caches can invalidate the values of the changed specs.
+ * Other properties are not reloaded.
+ */
+@Component
+public class SpecReloadService {
+
+    private static final String PROP_CONFIG_FILE = "proxy.spec-reload-config-file";
+
+    private final Logger logger = LogManager.getLogger(getClass());
+
+    @Inject
+    private ShinyProxySpecProvider shinyProxySpecProvider;
+
+    @Inject
+    private List<ISpecExtensionProvider<?>> specExtensionProviders;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Inject
+    @ConfigurationPropertiesBinding
+    private ObjectProvider<Converter<?, ?>> converters;
+
+    @Inject
+    @ConfigurationPropertiesBinding
+    private ObjectProvider<GenericConverter> genericConverters;
+
+    /**
+     * Reloads the specs.
+     *
+     * @return the ids of the specs that were added, changed or removed
+     * @throws IOException              when the configuration file cannot be read
+     * @throws IllegalArgumentException when the new configuration is invalid, the current specs are kept
+     */
+    public synchronized Set<String> reload() throws IOException {
+        Resource configFile = getConfigFile();
+        logger.info("Reloading specs from {}", configFile);
+
+        List<PropertySource<?>> propertySources = new ArrayList<>(new YamlPropertySourceLoader().load("spec-reload", configFile));
+        List<PropertySource<?>> placeholderSources = new ArrayList<>(propertySources);
+        if (environment instanceof ConfigurableEnvironment configurableEnvironment) {
+            // allow placeholders to refer to e.g. environment variables
+            configurableEnvironment.getPropertySources().forEach(placeholderSources::add);
+        }
+        Binder binder = new Binder(
+            ConfigurationPropertySources.from(propertySources),
+            new PropertySourcesPlaceholdersResolver(placeholderSources),
+            createConversionService());
+
+        List<ProxySpec> specs = binder.bind("proxy.specs", Bindable.listOf(ShinyProxySpecProvider.ShinyProxySpec.class))
+            .orElse(List.of())
+            .stream()
+            .map(ShinyProxySpecProvider.ShinyProxySpec::getProxySpec)
+            .toList();
+        List<ShinyProxySpecProvider.TemplateGroup> templateGroups = binder.bind("proxy.template-groups", Bindable.listOf(ShinyProxySpecProvider.TemplateGroup.class))
+            .orElse(new ArrayList<>());
+
+        List<List<? extends ISpecExtension>> specExtensions = new ArrayList<>();
+        for (ISpecExtensionProvider<?> specExtensionProvider : specExtensionProviders) {
+            specExtensions.add(bindSpecExtensions(binder, specExtensionProvider));
+        }
+
+        Set<String> changedSpecIds = shinyProxySpecProvider.replaceSpecs(specs, templateGroups, specExtensions);
+        logger.info("Reloaded specs, {} spec(s) added, changed or removed: {}", changedSpecIds.size(), changedSpecIds);
+        applicationEventPublisher.publishEvent(new SpecsChangedEvent(changedSpecIds));
+        return changedSpecIds;
+    }
+
+    /**
+     * Gets the configuration file containing the specs, i.e. the file set using `proxy.spec-reload-config-file` or
+     * else the file from which the specs were loaded at startup (which depends on e.g. `spring.config.location`).
+     */
+    private Resource getConfigFile() throws IOException {
+        String configFile = environment.getProperty(PROP_CONFIG_FILE);
+        if (configFile != null) {
+            return new FileSystemResource(configFile);
+        }
+        if (environment instanceof ConfigurableEnvironment configurableEnvironment) {
+            for (PropertySource<?> propertySource : configurableEnvironment.getPropertySources()) {
+                if (!(propertySource instanceof EnumerablePropertySource<?> enumerablePropertySource)) {
+                    continue;
+                }
+                for (String name : enumerablePropertySource.getPropertyNames()) {
+                    if (!name.startsWith("proxy.specs[")) {
+                        continue;
+                    }
+                    Origin origin = OriginLookup.getOrigin(propertySource, name);
+                    while (origin != null) {
+                        if (origin instanceof TextResourceOrigin textResourceOrigin && textResourceOrigin.getResource() != null) {
+                            return textResourceOrigin.getResource();
+                        }
+                        origin = origin.getParent();
+                    }
+                    // the specs are not loaded from a file (e.g. from environment variables)
+                    break;
+                }
+            }
+        }
+        throw new IOException(String.format("Cannot determine the configuration file containing the specs, use the '%s' property", PROP_CONFIG_FILE));
+    }
+
+    private List<? extends ISpecExtension> bindSpecExtensions(Binder binder, ISpecExtensionProvider<?> specExtensionProvider) {
+        Class<?> extensionClass = ResolvableType.forClass(ClassUtils.getUserClass(specExtensionProvider))
+            .as(ISpecExtensionProvider.class)
+            .getGeneric(0)
+            .resolve();
+        if (extensionClass == null || !ISpecExtension.class.isAssignableFrom(extensionClass)) {
+            throw new IllegalStateException("Cannot determine type of spec extension of " + specExtensionProvider.getClass());
+        }
+        return binder.bind("proxy.specs", Bindable.listOf(extensionClass.asSubclass(ISpecExtension.class))).orElse(null);
+    }
+
+    private ApplicationConversionService createConversionService() {
+        ApplicationConversionService conversionService = new ApplicationConversionService();
+        converters.orderedStream().forEach(conversionService::addConverter);
+        genericConverters.orderedStream().forEach(conversionService::addConverter);
+        return conversionService;
+    }
+
+}
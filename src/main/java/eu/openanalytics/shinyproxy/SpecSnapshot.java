@@ -0,0 +1,87 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.model.spec.ProxySpec;
+import eu.openanalytics.shinyproxy.external.ExternalAppSpecExtension;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the specs, together with some indexes that are computed once per snapshot.
+ * The snapshot is replaced as a whole when the specs change, therefore the lists can be shared without copying.
+ *
+ * @param specs                all specs, in the order of the configuration
+ * @param specsById            the specs by id
+ * @param templateGroupsBySpec the template group by spec id, specs without a template group are not included
+ * @param externalUrls         the external URL by spec id, only specs of external apps are included
+ * @param maxBufferSizes       the parsed iframe-script-injection-max-buffer-size by spec id, only specs that
+ *                             override the default are included
+ * @param templateGroups       all template groups, in the order of the configuration
+ */
+public record SpecSnapshot(List<ProxySpec> specs,
+                           Map<String, ProxySpec> specsById,
+                           Map<String, String> templateGroupsBySpec,
+                           Map<String, String> externalUrls,
+                           Map<String, Long> maxBufferSizes,
+                           List<ShinyProxySpecProvider.TemplateGroup> templateGroups) {
+
+    public static final SpecSnapshot EMPTY = of(List.of(), List.of());
+
+    public static SpecSnapshot of(List<ProxySpec> specs, List<ShinyProxySpecProvider.TemplateGroup> templateGroups) {
+        Map<String, ProxySpec> specsById = new HashMap<>();
+        Map<String, String> templateGroupsBySpec = new HashMap<>();
+        Map<String, String> externalUrls = new HashMap<>();
+        Map<String, Long> maxBufferSizes = new HashMap<>();
+
+        for (ProxySpec spec : specs) {
+            specsById.put(spec.getId(), spec);
+
+            String templateGroup = spec.getSpecExtension(ShinyProxySpecExtension.class).getTemplateGroup();
+            if (templateGroup != null) {
+                templateGroupsBySpec.put(spec.getId(), templateGroup);
+            }
+
+            String externalUrl = spec.getSpecExtension(ExternalAppSpecExtension.class).getExternalUrl();
+            if (externalUrl != null && !externalUrl.isBlank()) {
+                externalUrls.put(spec.getId(), externalUrl);
+            }
+
+            String maxBufferSize = spec.getSpecExtension(ShinyProxySpecExtension.class).getIframeScriptInjectionMaxBufferSize();
+            if (maxBufferSize != null) {
+                // parsed (and validated) once, instead of for every response
+                maxBufferSizes.put(spec.getId(), ShinyProxySpecProvider.parseMaxBufferSize(maxBufferSize));
+            }
+        }
+
+        return new SpecSnapshot(
+            List.copyOf(specs),
+            Collections.unmodifiableMap(specsById),
+            Collections.unmodifiableMap(templateGroupsBySpec),
+            Collections.unmodifiableMap(externalUrls),
+            Collections.unmodifiableMap(maxBufferSizes),
+            List.copyOf(templateGroups));
+    }
+
+}
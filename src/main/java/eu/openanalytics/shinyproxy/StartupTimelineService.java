@@ -0,0 +1,93 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
+import eu.openanalytics.shinyproxy.runtimevalues.StartupTimeline;
+import eu.openanalytics.shinyproxy.runtimevalues.StartupTimelineKey;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.undertow.server.HttpServerExchange;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.time.Duration;
+
+/**
+ * Records the {@link StartupTimeline} of proxies. The timeline is stored as runtime value of the proxy when the proxy
+ * is started and is updated in place while the proxy starts (i.e. later phases are only visible on the ShinyProxy
+ * replica that started the proxy).
+ * Once the first response of the app has been proxied, the duration of every phase is recorded in the
+ * `shinyproxy.proxy.startup` histogram (per spec and phase).
+ */
+@Component
+public class StartupTimelineService {
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * @return a runtime value containing a new timeline, to be added to the runtime values of a proxy that is started
+     */
+    public RuntimeValue createTimeline() {
+        StartupTimeline timeline = new StartupTimeline();
+        timeline.mark(StartupTimeline.Phase.Requested);
+        return new RuntimeValue(StartupTimelineKey.inst, timeline);
+    }
+
+    public void mark(Proxy proxy, StartupTimeline.Phase phase) {
+        StartupTimeline timeline = proxy.getRuntimeObjectOrNull(StartupTimelineKey.inst);
+        if (timeline == null || !timeline.mark(phase) || phase != StartupTimeline.Phase.FirstByte) {
+            return;
+        }
+        record(proxy, timeline, "container", StartupTimeline.Phase.Requested, StartupTimeline.Phase.ContainerStarted);
+        record(proxy, timeline, "readiness", StartupTimeline.Phase.ContainerStarted, StartupTimeline.Phase.Ready);
+        record(proxy, timeline, "first-byte", StartupTimeline.Phase.Ready, StartupTimeline.Phase.FirstByte);
+        record(proxy, timeline, "total", StartupTimeline.Phase.Requested, StartupTimeline.Phase.FirstByte);
+    }
+
+    /**
+     * Marks the {@link StartupTimeline.Phase#FirstByte} phase when the response of the given exchange is committed,
+     * unless this phase was already reached.
+     */
+    public void markFirstByteOnCommit(Proxy proxy, HttpServerExchange exchange) {
+        StartupTimeline timeline = proxy.getRuntimeObjectOrNull(StartupTimelineKey.inst);
+        if (timeline == null || timeline.hasReached(StartupTimeline.Phase.FirstByte)) {
+            return;
+        }
+        exchange.addResponseCommitListener((ex) -> mark(proxy, StartupTimeline.Phase.FirstByte));
+    }
+
+    private void record(Proxy proxy, StartupTimeline timeline, String phase, StartupTimeline.Phase from, StartupTimeline.Phase to) {
+        Duration duration = timeline.getDuration(from, to);
+        if (duration == null) {
+            return;
+        }
+        Timer.builder("shinyproxy.proxy.startup")
+            .tag("spec", proxy.getSpecId())
+            .tag("phase", phase)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(duration);
+    }
+
+}
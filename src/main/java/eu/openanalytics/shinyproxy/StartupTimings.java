@@ -0,0 +1,79 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the duration of the phases of loading the specs, such that it's visible where the startup time goes.
+ * The report is logged at startup and shown on the About page of the admin panel.
+ */
+public class StartupTimings {
+
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+
+    public <T> T time(String name, Supplier<T> supplier) {
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            phases.add(new Phase(name, Duration.ofNanos(System.nanoTime() - start)));
+        }
+    }
+
+    public void time(String name, Runnable runnable) {
+        time(name, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the phases, in the order they were completed
+     */
+    public List<Phase> getPhases() {
+        return List.copyOf(phases);
+    }
+
+    public Duration getTotal() {
+        return phases.stream().map(Phase::duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    @Override
+    public String toString() {
+        return phases.stream()
+            .map(phase -> String.format("%s: %d ms", phase.name(), phase.duration().toMillis()))
+            .collect(Collectors.joining(", ", "", String.format(" (total: %d ms)", getTotal().toMillis())));
+    }
+
+    public record Phase(String name, Duration duration) {
+
+        public long getMillis() {
+            return duration.toMillis();
+        }
+
+    }
+
+}
@@ -22,7 +22,6 @@ package eu.openanalytics.shinyproxy;
 
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.service.UserService;
-import eu.openanalytics.shinyproxy.external.ExternalAppSpecExtension;
 import lombok.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
@@ -32,6 +31,7 @@ import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class Thymeleaf {
@@ -43,8 +43,8 @@ public class Thymeleaf {
     private UserService userService;
 
     public String getAppUrl(ProxySpec proxySpec) {
-        String externalUrl = proxySpec.getSpecExtension(ExternalAppSpecExtension.class).getExternalUrl();
-        if (externalUrl != null && !externalUrl.isBlank()) {
+        String externalUrl = shinyProxySpecProvider.getSnapshot().externalUrls().get(proxySpec.getId());
+        if (externalUrl != null) {
             return externalUrl;
         }
 
@@ -102,8 +102,11 @@ public class Thymeleaf {
         HashMap<String, ArrayList<ProxySpec>> groupedApps = new HashMap<>();
         List<ProxySpec> ungroupedApps = new ArrayList<>();
 
+        // use a single snapshot, such that the template groups match the specs when they are reloaded concurrently
+        SpecSnapshot snapshot = shinyProxySpecProvider.getSnapshot();
+        Map<String, String> templateGroupsBySpec = snapshot.templateGroupsBySpec();
         for (ProxySpec app : apps) {
-            String groupId = app.getSpecExtension(ShinyProxySpecExtension.class).getTemplateGroup();
+            String groupId = templateGroupsBySpec.get(app.getId());
             if (groupId != null) {
                 groupedApps.putIfAbsent(groupId, new ArrayList<>());
                 groupedApps.get(groupId).add(app);
@@ -112,7 +115,7 @@ public class Thymeleaf {
             }
         }
 
-        List<ShinyProxySpecProvider.TemplateGroup> templateGroups = shinyProxySpecProvider.getTemplateGroups().stream().filter((g) -> groupedApps.containsKey(g.getId())).toList();
+        List<ShinyProxySpecProvider.TemplateGroup> templateGroups = snapshot.templateGroups().stream().filter((g) -> groupedApps.containsKey(g.getId())).toList();
         return new GroupedProxySpecs(
             apps.stream().map(ProxySpec::getId).toList(),
             apps,
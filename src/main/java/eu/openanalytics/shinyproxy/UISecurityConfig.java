@@ -22,7 +22,6 @@ package eu.openanalytics.shinyproxy;
 
 import eu.openanalytics.containerproxy.auth.IAuthenticationBackend;
 import eu.openanalytics.containerproxy.security.ICustomSecurityConfig;
-import eu.openanalytics.containerproxy.service.ProxyAccessControlService;
 import eu.openanalytics.containerproxy.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -56,7 +55,7 @@ public class UISecurityConfig implements ICustomSecurityConfig {
     private SavedRequestAwareAuthenticationSuccessHandler savedRequestAwareAuthenticationSuccessHandler;
 
     @Inject
-    private ProxyAccessControlService proxyAccessControlService;
+    private AccessDecisionCache accessDecisionCache;
 
     @Inject
     private HandlerMappingIntrospector handlerMappingIntrospector;
@@ -70,7 +69,7 @@ public class UISecurityConfig implements ICustomSecurityConfig {
                 new MvcRequestMatcher(handlerMappingIntrospector, "/app_i/{specId}/**"),
                 new MvcRequestMatcher(handlerMappingIntrospector, "/app_direct/{specId}/**"),
                 new MvcRequestMatcher(handlerMappingIntrospector, "/app_direct_i/{specId}/**"))
-            .access((authentication, context) -> new AuthorizationDecision(proxyAccessControlService.canAccessOrHasExistingProxy(authentication.get(), context)))
+            .access((authentication, context) -> new AuthorizationDecision(accessDecisionCache.canAccessOrHasExistingProxy(authentication.get(), context)))
         );
         if (auth.hasAuthorization()) {
             http.addFilterAfter(new AuthenticationRequiredFilter(), ExceptionTranslationFilter.class);
@@ -25,26 +25,94 @@ import eu.openanalytics.containerproxy.model.store.IProxyStore;
 import eu.openanalytics.containerproxy.service.AccessControlEvaluationService;
 import eu.openanalytics.containerproxy.service.ProxyIdIndex;
 import eu.openanalytics.shinyproxy.runtimevalues.AppInstanceKey;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Index of proxies by user, app name and instance name.
+ * The index is a hash map that is kept up to date using the {@link ProxyStoreEvent}s, therefore lookups never scan
+ * the proxy store. When using a distributed store (e.g. Redis), proxies added by other replicas are not part of the
+ * hash map, in that case a miss falls back to the (scanning) {@link ProxyIdIndex}.
+ */
 @Component
 public class UserAndAppNameAndInstanceNameProxyIndex extends ProxyIdIndex<UserAndAppNameAndInstanceNameProxyIndex.UserAndAppNameAndInstanceNameKey> {
 
-    public UserAndAppNameAndInstanceNameProxyIndex(IProxyStore proxyStore, AccessControlEvaluationService accessControlEvaluationService) {
-        super(proxyStore, accessControlEvaluationService, (key, proxy) ->
-            Objects.equals(proxy.getSpecId(), key.appName)
-                && Objects.equals(proxy.getUserId(), key.userId)
-                && Objects.equals(proxy.getRuntimeObjectOrNull(AppInstanceKey.inst), key.instanceName));
-        // use Objects.equals because some proxies might not yet be initialized
+    /**
+     * Both maps are only modified while holding the lock of this object, lookups only use {@link #proxyIds} and
+     * verify the result using the store.
+     */
+    private final ConcurrentHashMap<UserAndAppNameAndInstanceNameKey, String> proxyIds = new ConcurrentHashMap<>();
+    private final HashMap<String, UserAndAppNameAndInstanceNameKey> keys = new HashMap<>();
+    private final IProxyStore proxyStore;
+    private final boolean distributedStore;
+
+    public UserAndAppNameAndInstanceNameProxyIndex(IProxyStore proxyStore, AccessControlEvaluationService accessControlEvaluationService, Environment environment) {
+        super(proxyStore, accessControlEvaluationService, UserAndAppNameAndInstanceNameProxyIndex::matches);
+        this.proxyStore = proxyStore;
+        this.distributedStore = !environment.getProperty("proxy.store-mode", "None").equalsIgnoreCase("None");
     }
 
     public Proxy getProxy(String userId, String appname, String appInstance) {
-        return getProxy(userId, new UserAndAppNameAndInstanceNameKey(userId, appname, appInstance));
+        UserAndAppNameAndInstanceNameKey key = new UserAndAppNameAndInstanceNameKey(userId, appname, appInstance);
+        String proxyId = proxyIds.get(key);
+        if (proxyId != null) {
+            Proxy proxy = proxyStore.getProxy(proxyId);
+            if (proxy != null && matches(key, proxy)) {
+                return proxy;
+            }
+        }
+        if (!distributedStore) {
+            // every proxy of the local store results in an event, therefore the hash map is complete
+            return null;
+        }
+        return getProxy(userId, key);
+    }
+
+    @EventListener
+    public synchronized void onProxyStoreEvent(ProxyStoreEvent event) {
+        String proxyId = event.proxy().getId();
+        if (event.type() == ProxyStoreEvent.Type.Removed) {
+            UserAndAppNameAndInstanceNameKey oldKey = keys.remove(proxyId);
+            if (oldKey != null) {
+                proxyIds.remove(oldKey, proxyId);
+            }
+            return;
+        }
+        if (event.type() == ProxyStoreEvent.Type.Updated && proxyStore.getProxy(proxyId) == null) {
+            // the update is handled after the proxy was removed (e.g. a status update racing a stop)
+            return;
+        }
+        UserAndAppNameAndInstanceNameKey key = UserAndAppNameAndInstanceNameKey.of(event.proxy());
+        UserAndAppNameAndInstanceNameKey oldKey = keys.put(proxyId, key);
+        if (oldKey != null && !oldKey.equals(key)) {
+            proxyIds.remove(oldKey, proxyId);
+        }
+        if (event.type() == ProxyStoreEvent.Type.Added) {
+            proxyIds.put(key, proxyId);
+        } else {
+            // an update of an older proxy (e.g. one that is being stopped) should not replace a newer proxy
+            proxyIds.putIfAbsent(key, proxyId);
+        }
+    }
+
+    private static boolean matches(UserAndAppNameAndInstanceNameKey key, Proxy proxy) {
+        // use Objects.equals because some proxies might not yet be initialized
+        return Objects.equals(proxy.getSpecId(), key.appName)
+            && Objects.equals(proxy.getUserId(), key.userId)
+            && Objects.equals(proxy.getRuntimeObjectOrNull(AppInstanceKey.inst), key.instanceName);
     }
 
     public record UserAndAppNameAndInstanceNameKey(String userId, String appName, String instanceName) {
+
+        private static UserAndAppNameAndInstanceNameKey of(Proxy proxy) {
+            return new UserAndAppNameAndInstanceNameKey(proxy.getUserId(), proxy.getSpecId(), proxy.getRuntimeObjectOrNull(AppInstanceKey.inst));
+        }
+
     }
 
 }
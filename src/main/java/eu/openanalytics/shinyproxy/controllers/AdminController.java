@@ -32,7 +32,10 @@ import eu.openanalytics.containerproxy.model.runtime.runtimevalues.InstanceIdKey
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.MaxLifetimeKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.ParameterNamesKey;
 import eu.openanalytics.containerproxy.service.hearbeat.ActiveProxiesService;
+import eu.openanalytics.shinyproxy.SpecReloadService;
 import eu.openanalytics.shinyproxy.runtimevalues.AppInstanceKey;
+import eu.openanalytics.shinyproxy.runtimevalues.StartupTimeline;
+import eu.openanalytics.shinyproxy.runtimevalues.StartupTimelineKey;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -40,6 +43,8 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.servlet.http.HttpServletRequest;
 import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -50,19 +55,26 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.util.List;
+import java.util.Set;
 
 @Controller
 public class AdminController extends BaseController {
 
+    private final Logger logger = LogManager.getLogger(getClass());
+
     @Inject
     private ActiveProxiesService activeProxiesService;
 
     @Inject
     private BuildProperties buildProperties;
 
+    @Inject
+    private SpecReloadService specReloadService;
+
     @RequestMapping("/admin")
     private String admin(ModelMap map, HttpServletRequest request) {
         prepareMap(map, request);
@@ -91,6 +103,7 @@ public class AdminController extends BaseController {
         map.put("heapSize", FileUtils.byteCountToDisplaySize(Runtime.getRuntime().totalMemory()));
         map.put("heapFreeSize", FileUtils.byteCountToDisplaySize(Runtime.getRuntime().freeMemory()));
         map.put("heapMaxSize", FileUtils.byteCountToDisplaySize(Runtime.getRuntime().maxMemory()));
+        map.put("startupTimings", shinyProxySpecProvider.getStartupTimings());
 
         return "admin";
     }
@@ -125,6 +138,42 @@ public class AdminController extends BaseController {
         return ApiResponse.success(proxyInfos);
     }
 
+    @Operation(summary = "Reload the specs from the configuration file, without restarting ShinyProxy. Returns the ids of the specs that were added, changed or removed. Can only be used by admins.", tags = "ShinyProxy")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "200",
+            description = "Specs are reloaded.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(value = "{\"status\": \"success\", \"data\": [\"01_hello\", \"06_tabsets\"]}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "400",
+            description = "The new configuration is invalid, the specs are not changed.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(value = "{\"status\": \"fail\", \"data\": \"Configuration error: spec with id '01_hello' is defined multiple times\"}")
+                    }
+                )
+            }),
+    })
+    @RequestMapping(value = "/admin/specs/reload", produces = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
+    @ResponseBody
+    private ResponseEntity<ApiResponse<Set<String>>> reloadSpecs() {
+        try {
+            return ApiResponse.success(specReloadService.reload());
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Failed to reload specs", ex);
+            return ApiResponse.fail(ex.getMessage());
+        }
+    }
+
     public static class ProxyInfoResponse {
         public String status = "success";
         public List<ProxyInfo> data;
@@ -144,6 +193,8 @@ public class AdminController extends BaseController {
         public final String lastHeartBeat;
         public final String imageName;
         public final String imageTag;
+        @Schema(description = "Duration of the phases of the startup: container created + app ready + first response proxied.")
+        public final String startupTime;
         public final String heartbeatTimeout;
         public final String maxLifetime;
         public final String spInstance;
@@ -213,6 +264,13 @@ public class AdminController extends BaseController {
                 parameters = null;
             }
             spInstance = proxy.getRuntimeObjectOrDefault(InstanceIdKey.inst, "N/A");
+
+            StartupTimeline startupTimeline = proxy.getRuntimeObjectOrNull(StartupTimelineKey.inst);
+            if (startupTimeline != null && !startupTimeline.toString().isEmpty()) {
+                startupTime = startupTimeline.toString();
+            } else {
+                startupTime = "N/A";
+            }
         }
 
         private String getTimeDelta(Long timestamp) {
@@ -42,6 +42,7 @@ import eu.openanalytics.containerproxy.service.InvalidParametersException;
 import eu.openanalytics.containerproxy.service.ParametersService;
 import eu.openanalytics.containerproxy.util.ProxyMappingManager;
 import eu.openanalytics.shinyproxy.ShinyProxyIframeScriptInjector;
+import eu.openanalytics.shinyproxy.StartupTimelineService;
 import eu.openanalytics.shinyproxy.controllers.dto.ShinyProxyApiResponse;
 import eu.openanalytics.shinyproxy.external.ExternalAppSpecExtension;
 import eu.openanalytics.shinyproxy.runtimevalues.AppInstanceKey;
@@ -50,6 +51,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.undertow.util.HttpString;
 import jakarta.servlet.RequestDispatcher;
@@ -61,7 +63,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -72,6 +73,7 @@ import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.servlet.view.RedirectView;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.context.ExpressionContext;
 import org.thymeleaf.spring6.dialect.SpringStandardDialect;
 import org.thymeleaf.templatemode.TemplateMode;
@@ -90,6 +92,9 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
 @Controller
 public class AppController extends BaseController {
 
+    private static final String SP_PROXY_ID = "sp_proxy_id";
+    private static final int PARAMETER_TEMPLATE_CACHE_SIZE = 200;
+    private final TemplateEngine parameterTemplateEngine = createParameterTemplateEngine();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final HttpString acceptEncodingHeader = new HttpString("Accept-Encoding");
     @Inject
@@ -98,9 +103,18 @@ public class AppController extends BaseController {
     private AsyncProxyService asyncProxyService;
     @Inject
     private ParametersService parameterService;
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    @Inject
+    private StartupTimelineService startupTimelineService;
 
     private int pathPrefixLength = 0;
 
+    private ShinyProxyIframeScriptInjector.InjectionMode scriptInjectionMode;
+
+    private boolean scriptInjectionCompression;
+
     public AppController() {
         objectMapper.setConfig(objectMapper.getSerializationConfig().withView(Views.UserApi.class));
     }
@@ -109,6 +123,8 @@ public class AppController extends BaseController {
     public void init() {
         // +1 to include last slash
         pathPrefixLength = getBasePublicPath().length() + DefaultTargetMappingStrategy.TARGET_ID_LENGTH + 1;
+        scriptInjectionMode = environment.getProperty("proxy.iframe-script-injection-mode", ShinyProxyIframeScriptInjector.InjectionMode.class, ShinyProxyIframeScriptInjector.InjectionMode.Streaming);
+        scriptInjectionCompression = environment.getProperty("proxy.iframe-script-injection-compression", Boolean.class, false);
     }
 
     @RequestMapping(value = "/app/{appName}/{*subPath}", method = GET)
@@ -260,11 +276,6 @@ public class AppController extends BaseController {
             return ApiResponse.fail("You already have an instance of this app with the given name");
         }
 
-        if (!validateMaxInstances(spec)) {
-            Integer maxInstances = shinyProxySpecProvider.getMaxInstancesForSpec(spec);
-            return ApiResponse.fail(String.format("Cannot start this app because you are using the maximum number of instances (%s) of this app.", maxInstances));
-        }
-
         List<RuntimeValue> runtimeValues = shinyProxySpecProvider.getRuntimeValues(spec);
         String id = UUID.randomUUID().toString();
         runtimeValues.add(new RuntimeValue(PublicPathKey.inst, getPublicPath(id)));
@@ -272,12 +283,20 @@ public class AppController extends BaseController {
         if (appBody != null && appBody.getTimezone() != null) {
             runtimeValues.add(new RuntimeValue(UserTimeZoneKey.inst, appBody.getTimezone()));
         }
+        runtimeValues.add(startupTimelineService.createTimeline());
+
+        if (!reserveInstance(spec, id)) {
+            Integer maxInstances = shinyProxySpecProvider.getMaxInstancesForSpec(spec);
+            return ApiResponse.fail(String.format("Cannot start this app because you are using the maximum number of instances (%s) of this app.", maxInstances));
+        }
 
         try {
             return ApiResponse.success(asyncProxyService.startProxy(spec, runtimeValues, id, (appBody != null) ? appBody.getParameters() : null));
         } catch (ProxyStartValidationException | InvalidParametersException ex) {
+            releaseInstance(id);
             return ApiResponse.fail(ex.getMessage());
         } catch (Throwable t) {
+            releaseInstance(id);
             return ApiResponse.error("Failed to start proxy");
         }
     }
@@ -315,20 +334,22 @@ public class AppController extends BaseController {
             return;
         }
 
+        // lookup the user once, this is the hot path of every (asset) request of the app
+        String userId = userService.getCurrentUserId();
         Proxy proxy;
-        String proxyId = extractQueryParameter(request, "sp_proxy_id");
+        String proxyId = extractQueryParameter(request, SP_PROXY_ID);
         if (proxyId != null) {
             proxy = proxyService.getUserProxy(proxyId);
         } else {
-            proxy = userAndTargetIdProxyIndex.getProxy(userService.getCurrentUserId(), targetId);
+            proxy = userAndTargetIdProxyIndex.getProxy(userId, targetId);
         }
-        if (proxy == null || proxy.getStatus().isUnavailable() || !userService.isOwner(proxy)) {
+        if (proxy == null || proxy.getStatus().isUnavailable() || userId == null || !userId.equals(proxy.getUserId())) {
             ShinyProxyApiResponse.appStoppedOrNonExistent(response);
             return;
         }
 
         try {
-            mappingManager.dispatchAsync(proxy, subPath, request, response);
+            mappingManager.dispatchAsync(proxy, subPath, request, response, (exchange) -> startupTimelineService.markFirstByteOnCommit(proxy, exchange));
         } catch (Exception e) {
             throw new RuntimeException("Error routing proxy request", e);
         }
@@ -357,7 +378,7 @@ public class AppController extends BaseController {
             // note: the header is relatively new and therefore the script is injected if the header is not present
             // see: #30809
             try {
-                mappingManager.dispatchAsync(proxy, subPath, request, response);
+                mappingManager.dispatchAsync(proxy, subPath, request, response, (exchange) -> startupTimelineService.markFirstByteOnCommit(proxy, exchange));
                 return;
             } catch (Exception e) {
                 throw new RuntimeException("Error routing proxy request", e);
@@ -366,9 +387,19 @@ public class AppController extends BaseController {
 
         try {
             String scriptPath = contextPathHelper.withEndingSlash() + identifierService.instanceId + "/js/shiny.iframe.js";
+            String encoding = scriptInjectionCompression ? ShinyProxyIframeScriptInjector.negotiateEncoding(request.getHeader("Accept-Encoding")) : null;
+            long maxBufferSize = shinyProxySpecProvider.getIframeScriptInjectionMaxBufferSize(shinyProxySpecProvider.getSpec(proxy.getSpecId()));
+            ShinyProxyIframeScriptInjector.Options options = new ShinyProxyIframeScriptInjector.Options(scriptPath, scriptInjectionMode, encoding, maxBufferSize,
+                () -> meterRegistry.counter("shinyproxy.iframe.script.injection.skipped", "spec", proxy.getSpecId(), "reason", "max-buffer-size").increment());
             mappingManager.dispatchAsync(proxy, subPath, request, response, (exchange) -> {
-                exchange.getRequestHeaders().put(acceptEncodingHeader, "identity"); // ensure no encoding is used
-                exchange.addResponseWrapper((factory, exchange1) -> new ShinyProxyIframeScriptInjector(factory.create(), exchange1, scriptPath));
+                startupTimelineService.markFirstByteOnCommit(proxy, exchange);
+                if (encoding != null) {
+                    // only allow the encoding that can be decoded by the injector
+                    exchange.getRequestHeaders().put(acceptEncodingHeader, encoding);
+                } else {
+                    exchange.getRequestHeaders().put(acceptEncodingHeader, "identity"); // ensure no encoding is used
+                }
+                exchange.addResponseWrapper((factory, exchange1) -> ShinyProxyIframeScriptInjector.wrap(factory, exchange1, options));
             });
         } catch (Exception e) {
             throw new RuntimeException("Error routing proxy request", e);
@@ -382,13 +413,41 @@ public class AppController extends BaseController {
      * @param name the name of the parameter
      * @return the (first) value or null
      */
-    private String extractQueryParameter(HttpServletRequest request, String name) {
-        MultiValueMap<String, String> params = ServletUriComponentsBuilder.fromRequest(request)
-            .build().getQueryParams();
-        if (!params.containsKey(name)) {
+    private static String extractQueryParameter(HttpServletRequest request, String name) {
+        return extractQueryParameter(request.getQueryString(), name);
+    }
+
+    /**
+     * Scans the raw query string for the given parameter, without parsing the other parameters.
+     * The value is returned as-is (i.e. not URL decoded).
+     * @param query the raw query string (may be null)
+     * @param name the name of the parameter
+     * @return the (first) value or null
+     */
+    public static String extractQueryParameter(String query, String name) {
+        if (query == null) {
             return null;
         }
-        return params.getFirst(name);
+        int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            int nameEnd = start + name.length();
+            if (nameEnd <= end && query.startsWith(name, start)) {
+                if (nameEnd == end) {
+                    // parameter without value
+                    return null;
+                }
+                if (query.charAt(nameEnd) == '=') {
+                    return query.substring(nameEnd + 1, end);
+                }
+            }
+            start = end + 1;
+        }
+        return null;
     }
 
     private String buildContainerSubPath(HttpServletRequest request, String subPath) {
@@ -500,16 +559,29 @@ public class AppController extends BaseController {
     }
 
     private String renderParameterTemplate(String template, ModelMap map) {
-        TemplateEngine templateEngine = new TemplateEngine();
+        ExpressionContext context = new ExpressionContext(parameterTemplateEngine.getConfiguration(), null, map);
+        return parameterTemplateEngine.process(template, context);
+    }
+
+    /**
+     * Creates the engine used to render the parameter templates of the specs.
+     * The {@link StringTemplateResolver} uses the content of the template as its name, therefore every template is
+     * parsed once and cached using its content as key. When a spec (and thus its template) changes, a new entry is
+     * created and the old entry is eventually evicted from the (bounded) cache.
+     */
+    private static TemplateEngine createParameterTemplateEngine() {
         StringTemplateResolver stringTemplateResolver = new StringTemplateResolver();
         stringTemplateResolver.setTemplateMode(TemplateMode.HTML);
-        stringTemplateResolver.setCacheable(false);
+        stringTemplateResolver.setCacheable(true);
+
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(PARAMETER_TEMPLATE_CACHE_SIZE);
 
+        TemplateEngine templateEngine = new TemplateEngine();
         templateEngine.setTemplateResolver(stringTemplateResolver);
+        templateEngine.setCacheManager(cacheManager);
         templateEngine.setDialect(new SpringStandardDialect());
-
-        ExpressionContext context = new ExpressionContext(templateEngine.getConfiguration(), null, map);
-        return templateEngine.process(template, context);
+        return templateEngine;
     }
 
     /**
@@ -26,11 +26,17 @@ import eu.openanalytics.containerproxy.model.runtime.ProxyStatus;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.PublicPathKey;
 import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
-import eu.openanalytics.containerproxy.service.InvalidParametersException;
+import eu.openanalytics.containerproxy.service.AsyncProxyService;
 import eu.openanalytics.containerproxy.util.ProxyMappingManager;
 import eu.openanalytics.shinyproxy.AppRequestInfo;
+import eu.openanalytics.shinyproxy.ProxyStartupWaiter;
+import eu.openanalytics.shinyproxy.StartupTimelineService;
 import eu.openanalytics.shinyproxy.runtimevalues.AppInstanceKey;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -39,20 +45,57 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Controller
 public class AppDirectController extends BaseController {
 
+    private static final String START_RESULT_ATTRIBUTE = AppDirectController.class.getName() + ".startResult";
+
+    /**
+     * Starts that are in progress, such that concurrent requests for the same app (e.g. the assets of an embedded app)
+     * wait for the same start instead of each starting an app.
+     */
+    private final ConcurrentHashMap<StartKey, CompletableFuture<Proxy>> pendingStarts = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingStartRequests = new AtomicInteger();
+
+    private Duration startupTimeout;
+
     @Inject
     private ProxyMappingManager mappingManager;
 
+    @Inject
+    private AsyncProxyService asyncProxyService;
+
+    @Inject
+    private ProxyStartupWaiter proxyStartupWaiter;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    @Inject
+    private StartupTimelineService startupTimelineService;
+
+    @PostConstruct
+    public void init() {
+        startupTimeout = environment.getProperty("proxy.app-direct-startup-timeout", Duration.class, Duration.ofMinutes(10));
+        meterRegistry.gauge("shinyproxy.app.direct.pending.starts", pendingStartRequests);
+    }
+
     @Operation(summary = "Proxy request to app. Starts the app if it does not yet exists. Can be used directly or for embedding.", tags = "ShinyProxy")
     @RequestMapping(value = {"/app_direct_i/**", "/app_direct/**"})
-    public void appDirect(HttpServletRequest request, HttpServletResponse response) throws InvalidParametersException, ServletException, IOException {
+    public void appDirect(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         // note: app_direct does not support parameters and resume
         AppRequestInfo appRequestInfo = AppRequestInfo.fromRequestOrNull(request);
         if (appRequestInfo == null) {
@@ -70,72 +113,167 @@ public class AppDirectController extends BaseController {
             return;
         }
 
-        Proxy proxy = getOrStart(appRequestInfo, request, response);
-        if (proxy == null) {
-            return;
+        if (request.getAttribute(START_RESULT_ATTRIBUTE) != null) {
+            // the request was suspended while the app was starting
+            Object startResult = request.getAttribute(START_RESULT_ATTRIBUTE);
+            request.removeAttribute(START_RESULT_ATTRIBUTE);
+            if (startResult instanceof Proxy proxy) {
+                dispatch(proxy, appRequestInfo, request, response);
+                return;
+            }
+            if (startResult instanceof ContainerProxyException containerProxyException) {
+                throw containerProxyException;
+            }
+            throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName(), (Throwable) startResult);
         }
 
-        try {
-            mappingManager.dispatchAsync(proxy, appRequestInfo.getSubPath(), request, response);
-        } catch (Exception e) {
-            throw new RuntimeException("Error routing proxy request", e);
+        Proxy proxy = findUserProxy(appRequestInfo);
+        if (proxy != null && proxy.getStatus() == ProxyStatus.Up) {
+            dispatch(proxy, appRequestInfo, request, response);
+            return;
+        }
+        if (proxy != null && proxy.getStatus() != ProxyStatus.New) {
+            throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName());
         }
-    }
 
-    private Proxy getOrStart(AppRequestInfo appRequestInfo, HttpServletRequest request, HttpServletResponse response) throws InvalidParametersException, ServletException, IOException {
-        Proxy proxy = findUserProxy(appRequestInfo);
         if (proxy == null) {
             ProxySpec spec = proxyService.getUserSpec(appRequestInfo.getAppName());
-
             if (spec == null) {
                 request.setAttribute(RequestDispatcher.ERROR_STATUS_CODE, HttpStatus.FORBIDDEN.value());
                 request.getRequestDispatcher("/error").forward(request, response);
-                return null;
+                return;
             }
+            // the start itself happens in the background, this only blocks while the start is being submitted
+            proxy = startOrJoin(spec, appRequestInfo);
+        }
+
+        suspendUntilUp(proxyStartupWaiter.waitUntilUp(proxy), request);
+    }
+
+    /**
+     * Suspends the request (without blocking the request thread) until the app is up, the app failed to start or
+     * the startup timeout is reached. The request is then dispatched again (to this controller) with the result of
+     * the start in the {@link #START_RESULT_ATTRIBUTE} attribute.
+     */
+    private void suspendUntilUp(CompletableFuture<Proxy> up, HttpServletRequest request) {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(startupTimeout.toMillis());
+        AtomicBoolean resumed = new AtomicBoolean(false);
+        pendingStartRequests.incrementAndGet();
 
-            if (!validateMaxInstances(spec)) {
-                throw new ContainerProxyException("Cannot start new proxy because the maximum amount of instances of this proxy has been reached");
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
             }
 
-            List<RuntimeValue> runtimeValues = shinyProxySpecProvider.getRuntimeValues(spec);
-            String id = UUID.randomUUID().toString();
-            runtimeValues.add(new RuntimeValue(PublicPathKey.inst, getPublicPath(appRequestInfo)));
-            runtimeValues.add(new RuntimeValue(AppInstanceKey.inst, appRequestInfo.getAppInstance()));
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                resume(asyncContext, resumed, new ContainerProxyException("Timeout while waiting for app to start"));
+            }
 
-            try {
-                proxyService.startProxy(userService.getCurrentAuth(), spec, runtimeValues, id, null).run();
-            } catch (Throwable t) {
-                throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName(), t);
+            @Override
+            public void onError(AsyncEvent event) {
+                if (resumed.compareAndSet(false, true)) {
+                    pendingStartRequests.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        up.whenComplete((proxy, throwable) -> {
+            if (throwable != null) {
+                resume(asyncContext, resumed, throwable instanceof CompletionException ? throwable.getCause() : throwable);
+            } else {
+                resume(asyncContext, resumed, proxy);
             }
-            proxy = proxyService.getUserProxy(id);
+        });
+    }
+
+    private void resume(AsyncContext asyncContext, AtomicBoolean resumed, Object startResult) {
+        if (!resumed.compareAndSet(false, true)) {
+            return;
         }
-        if (proxy.getStatus() == ProxyStatus.Up) {
-            return proxy;
-        } else if (proxy.getStatus() == ProxyStatus.New) {
-            // maximum wait 10 minutes for the app to startup
-            for (int i = 0; i < 600; i++) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ex) {
-                    throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName());
-                }
-                Proxy result = proxyService.getProxy(proxy.getId());
-                if (result == null) {
-                    throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName());
-                }
-                if (result.getStatus().equals(ProxyStatus.Up)) {
-                    return result;
-                }
-                if (!result.getStatus().equals(ProxyStatus.New)) {
-                    throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName());
+        pendingStartRequests.decrementAndGet();
+        asyncContext.getRequest().setAttribute(START_RESULT_ATTRIBUTE, startResult);
+        asyncContext.dispatch();
+    }
+
+    private void dispatch(Proxy proxy, AppRequestInfo appRequestInfo, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            mappingManager.dispatchAsync(proxy, appRequestInfo.getSubPath(), request, response, (exchange) -> startupTimelineService.markFirstByteOnCommit(proxy, exchange));
+        } catch (Exception e) {
+            throw new RuntimeException("Error routing proxy request", e);
+        }
+    }
+
+    /**
+     * Starts the app, unless another request of the same user is already starting the same app instance, in that case
+     * the result of that start is returned. The app is started asynchronously, the returned proxy is not yet up.
+     */
+    private Proxy startOrJoin(ProxySpec spec, AppRequestInfo appRequestInfo) {
+        StartKey key = new StartKey(userService.getCurrentUserId(), appRequestInfo.getAppName(), appRequestInfo.getAppInstance());
+        CompletableFuture<Proxy> future = new CompletableFuture<>();
+        CompletableFuture<Proxy> pendingStart = pendingStarts.putIfAbsent(key, future);
+        if (pendingStart != null) {
+            try {
+                return pendingStart.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof ContainerProxyException containerProxyException) {
+                    throw containerProxyException;
                 }
+                throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName(), ex.getCause());
             }
         }
-        throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName());
+
+        try {
+            // the app may have been started by a request that finished between the lookup and registering the future
+            Proxy proxy = findUserProxy(appRequestInfo);
+            if (proxy == null) {
+                proxy = start(spec, appRequestInfo);
+            }
+            future.complete(proxy);
+            return proxy;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            pendingStarts.remove(key, future);
+        }
+    }
+
+    private Proxy start(ProxySpec spec, AppRequestInfo appRequestInfo) {
+        List<RuntimeValue> runtimeValues = shinyProxySpecProvider.getRuntimeValues(spec);
+        String id = UUID.randomUUID().toString();
+        runtimeValues.add(new RuntimeValue(PublicPathKey.inst, getPublicPath(appRequestInfo)));
+        runtimeValues.add(new RuntimeValue(AppInstanceKey.inst, appRequestInfo.getAppInstance()));
+        runtimeValues.add(startupTimelineService.createTimeline());
+
+        if (!reserveInstance(spec, id)) {
+            throw new ContainerProxyException("Cannot start new proxy because the maximum amount of instances of this proxy has been reached");
+        }
+
+        Proxy proxy;
+        try {
+            // when the start fails after this call, the proxy is removed and its instance is released
+            proxy = asyncProxyService.startProxy(spec, runtimeValues, id, null);
+        } catch (Throwable t) {
+            releaseInstance(id);
+            throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName(), t);
+        }
+        if (proxy == null) {
+            throw new ContainerProxyException("Failed to start app " + appRequestInfo.getAppName());
+        }
+        return proxy;
     }
 
     private String getPublicPath(AppRequestInfo appRequestInfo) {
         return contextPathHelper.withEndingSlash() + "app_direct_i/" + appRequestInfo.getAppName() + "/" + appRequestInfo.getAppInstance();
     }
 
+    private record StartKey(String userId, String appName, String appInstance) {
+    }
+
 }
@@ -25,6 +25,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import eu.openanalytics.containerproxy.auth.IAuthenticationBackend;
 import eu.openanalytics.containerproxy.backend.IContainerBackend;
 import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.spec.AccessControl;
 import eu.openanalytics.containerproxy.model.spec.ProxySpec;
 import eu.openanalytics.containerproxy.service.IdentifierService;
 import eu.openanalytics.containerproxy.service.ProxyService;
@@ -36,7 +37,10 @@ import eu.openanalytics.containerproxy.spec.expression.SpecExpressionResolver;
 import eu.openanalytics.containerproxy.util.ContextPathHelper;
 import eu.openanalytics.containerproxy.util.EnvironmentUtils;
 import eu.openanalytics.shinyproxy.AppRequestInfo;
+import eu.openanalytics.shinyproxy.LogoService;
+import eu.openanalytics.shinyproxy.ProxyInstanceCounter;
 import eu.openanalytics.shinyproxy.ShinyProxySpecProvider;
+import eu.openanalytics.shinyproxy.SpecsChangedEvent;
 import eu.openanalytics.shinyproxy.Thymeleaf;
 import eu.openanalytics.shinyproxy.UserAndAppNameAndInstanceNameProxyIndex;
 import jakarta.servlet.http.HttpServletRequest;
@@ -44,41 +48,39 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.ui.ModelMap;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URLConnection;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public abstract class BaseController {
 
-    private static final Logger logger = LogManager.getLogger(BaseController.class);
-    private static final Cache<String, Optional<LogoInfo>> logoInfoCache = Caffeine.newBuilder().build();
+    private static final Cache<AccessProfile, AppListModel> appListModelCache = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterAccess(60, TimeUnit.MINUTES)
+        .build();
+    private static volatile AppListCachePolicy appListCachePolicy;
     protected String applicationName;
     protected String title;
     private Boolean titleContainsExpression;
     private Boolean logoContainsExpression;
     protected String logo;
-    private final Cache<String, Optional<String>> logoCache = Caffeine.newBuilder().build();
     protected long heartbeatRate;
     protected boolean defaultShowNavbar;
     protected String defaultSupportAddress;
@@ -114,11 +116,16 @@ public abstract class BaseController {
     @Inject
     private Thymeleaf thymeleaf;
     @Inject
+    private LogoService logoService;
+    @Inject
+    private ProxyInstanceCounter proxyInstanceCounter;
+    private boolean distributedStore;
+    @Inject
     protected SpecExpressionResolver expressionResolver;
 
     @PostConstruct
     public void baseInit() {
-        defaultLogo = resolveImageURI(environment.getProperty("proxy.default-app-logo-url")).orElse(null);
+        defaultLogo = environment.getProperty("proxy.default-app-logo-url");
         defaultLogoWidth = environment.getProperty("proxy.default-app-logo-width");
         defaultLogoHeight = environment.getProperty("proxy.default-app-logo-height");
         defaultLogoStyle = environment.getProperty("proxy.default-app-logo-style");
@@ -132,6 +139,11 @@ public abstract class BaseController {
         defaultShowNavbar = !Boolean.parseBoolean(environment.getProperty("proxy.hide-navbar"));
         defaultSupportAddress = environment.getProperty("proxy.support.mail-to-address");
         allowTransferApp = environment.getProperty("proxy.allow-transfer-app", Boolean.class, false);
+        distributedStore = !environment.getProperty("proxy.store-mode", "None").equalsIgnoreCase("None");
+        // load the logos of all specs (see LogoService), instead of during the first page render
+        for (ProxySpec spec : shinyProxySpecProvider.getSpecs()) {
+            getAppLogoInfo(spec);
+        }
         List<String> bodyClassesList = EnvironmentUtils.readList(environment, "proxy.body-classes");
         if (bodyClassesList != null && !bodyClassesList.isEmpty()) {
             bodyClasses = String.join(" ", bodyClassesList);
@@ -179,27 +191,20 @@ public abstract class BaseController {
         map.put("maxInstances", 0); // defaults, used in navbar
         map.put("contextPath", contextPathHelper.withEndingSlash());
         map.put("resourcePrefix", "/" + identifierService.instanceId);
-        map.put("appMaxInstances", shinyProxySpecProvider.getMaxInstances());
         map.put("pauseSupported", backend.supportsPause());
         map.put("spInstance", identifierService.instanceId);
         map.put("allowTransferApp", allowTransferApp);
         map.put("notificationMessage", environment.getProperty("proxy.notification-message"));
         map.put("bodyClasses", bodyClasses);
 
-        List<ProxySpec> apps = proxyService.getUserSpecs();
-        Thymeleaf.GroupedProxySpecs groupedApps = thymeleaf.groupApps(apps);
-        map.put("apps", apps);
-        map.put("appIds", groupedApps.getIds());
-        map.put("templateGroups", groupedApps.getTemplateGroups());
-        map.put("groupedApps", groupedApps.getGroupedApps());
-        map.put("ungroupedApps", groupedApps.getUngroupedApps());
-
-        // app logos
-        Map<ProxySpec, LogoInfo> appLogos = new HashMap<>();
-        for (ProxySpec app : shinyProxySpecProvider.getSpecs()) {
-            appLogos.put(app, getAppLogoInfo(app));
-        }
-        map.put("appLogos", appLogos);
+        AppListModel appListModel = getAppListModel(authentication);
+        map.put("apps", appListModel.apps());
+        map.put("appIds", appListModel.groupedApps().getIds());
+        map.put("templateGroups", appListModel.groupedApps().getTemplateGroups());
+        map.put("groupedApps", appListModel.groupedApps().getGroupedApps());
+        map.put("ungroupedApps", appListModel.groupedApps().getUngroupedApps());
+        map.put("appLogos", getAppLogos(appListModel.apps()));
+        map.put("appMaxInstances", getAppMaxInstances(appListModel, proxySpec));
 
         ServletRequestAttributes servletRequestAttributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
         HttpServletRequest httpServletRequest = servletRequestAttributes.getRequest();
@@ -208,74 +213,145 @@ public abstract class BaseController {
         map.put("response", httpServletResponse);
     }
 
+    /**
+     * Gets the max instances of the apps the user has access to and of the apps of which the user has a proxy (e.g.
+     * a transferred proxy or an app the user no longer has access to), since these are shown in the navbar and the
+     * instances modal.
+     */
+    private Map<String, Integer> getAppMaxInstances(AppListModel appListModel, ProxySpec proxySpec) {
+        Map<String, Integer> result = shinyProxySpecProvider.getMaxInstances(appListModel.apps());
+        if (proxySpec != null) {
+            result.computeIfAbsent(proxySpec.getId(), (id) -> shinyProxySpecProvider.getMaxInstancesForSpec(proxySpec));
+        }
+        for (String specId : getRunningSpecIds()) {
+            if (result.containsKey(specId)) {
+                continue;
+            }
+            ProxySpec spec = shinyProxySpecProvider.getSpec(specId);
+            if (spec != null) {
+                result.put(spec.getId(), shinyProxySpecProvider.getMaxInstancesForSpec(spec));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the ids of the apps of which the current user has a proxy, without scanning all proxies (unless when
+     * using a distributed store, since the proxies of other replicas are not counted by {@link ProxyInstanceCounter})
+     */
+    private Set<String> getRunningSpecIds() {
+        if (distributedStore) {
+            return proxyService.getUserProxies().stream().map(Proxy::getSpecId).collect(Collectors.toSet());
+        }
+        return proxyInstanceCounter.getSpecIds(userService.getCurrentUserId());
+    }
+
+    /**
+     * Gets the list of apps (and related model) the user has access to.
+     * The result only depends on the specs and on the access profile of the user (i.e. authorities and, if any spec
+     * uses `access-users`, the user id), therefore it is shared between all users with the same access profile.
+     * When a spec uses an access expression, the result can depend on anything and is never cached.
+     */
+    private AppListModel getAppListModel(Authentication authentication) {
+        AppListCachePolicy policy = getAppListCachePolicy();
+        if (!policy.cacheable()) {
+            return createAppListModel();
+        }
+        return appListModelCache.get(AccessProfile.of(authentication, policy.includeUserId() ? userService.getCurrentUserId() : null), (profile) -> createAppListModel());
+    }
+
+    private AppListModel createAppListModel() {
+        List<ProxySpec> apps = List.copyOf(proxyService.getUserSpecs());
+        Thymeleaf.GroupedProxySpecs groupedApps = thymeleaf.groupApps(apps);
+        return new AppListModel(apps, groupedApps);
+    }
+
+    /**
+     * @return the logos of the given apps, keyed by id to prevent hashing the complete spec. Not cached, since the
+     * URL of a logo changes when the file changes (see {@link LogoService}).
+     */
+    private Map<String, LogoInfo> getAppLogos(List<ProxySpec> apps) {
+        Map<String, LogoInfo> appLogos = new HashMap<>();
+        for (ProxySpec app : apps) {
+            LogoInfo logoInfo = getAppLogoInfo(app);
+            if (logoInfo != null) {
+                appLogos.put(app.getId(), logoInfo);
+            }
+        }
+        return appLogos;
+    }
+
+    private AppListCachePolicy getAppListCachePolicy() {
+        AppListCachePolicy policy = appListCachePolicy;
+        if (policy == null) {
+            policy = AppListCachePolicy.of(shinyProxySpecProvider.getSpecs());
+            appListCachePolicy = policy;
+        }
+        return policy;
+    }
+
+    /**
+     * Invalidates the cached app lists, must be called when the specs change.
+     */
+    protected static void invalidateAppListModelCache() {
+        appListCachePolicy = null;
+        appListModelCache.invalidateAll();
+    }
+
+    /**
+     * Invalidates the cached values of the changed specs.
+     * Note: the caches are shared between all controllers, therefore invalidating them multiple times is harmless.
+     */
+    @EventListener
+    public void onSpecsChanged(SpecsChangedEvent event) {
+        invalidateAppListModelCache();
+    }
+
     protected String getDefaultSupportAddress() {
         return environment.getProperty("proxy.support.mail-to-address");
     }
 
     protected LogoInfo getAppLogoInfo(ProxySpec proxySpec) {
-        return logoInfoCache.get(proxySpec.getId(), (specId) -> {
-            String src = resolveImageURI(proxySpec.getLogoURL()).orElse(defaultLogo);
-            if (src == null) {
-                return Optional.empty();
-            }
+        String src = resolveImageURI(proxySpec.getLogoURL()).or(() -> resolveImageURI(defaultLogo)).orElse(null);
+        if (src == null) {
+            return null;
+        }
 
-            return Optional.of(LogoInfo.builder()
-                .src(src)
-                .width(coalesce(proxySpec.getLogoWidth(), defaultLogoWidth))
-                .height(coalesce(proxySpec.getLogoHeight(), defaultLogoHeight))
-                .style(coalesce(proxySpec.getLogoStyle(), defaultLogoStyle))
-                .classes(coalesce(proxySpec.getLogoClasses(), defaultLogoClasses))
-                .build());
-        }).orElse(null);
+        return LogoInfo.builder()
+            .src(src)
+            .width(coalesce(proxySpec.getLogoWidth(), defaultLogoWidth))
+            .height(coalesce(proxySpec.getLogoHeight(), defaultLogoHeight))
+            .style(coalesce(proxySpec.getLogoStyle(), defaultLogoStyle))
+            .classes(coalesce(proxySpec.getLogoClasses(), defaultLogoClasses))
+            .build();
     }
 
     protected Optional<String> resolveImageURI(String resourceURI) {
-        if (resourceURI == null || resourceURI.isBlank()) {
-            return Optional.empty();
-        }
-
-        if (resourceURI.toLowerCase().startsWith("file://")) {
-            String mimetype = URLConnection.guessContentTypeFromName(resourceURI);
-            if (mimetype == null) {
-                logger.warn("Cannot determine mimetype for resource: {}", resourceURI);
-                return Optional.empty();
-            } else {
-                try (InputStream input = new URI(resourceURI).toURL().openConnection().getInputStream()) {
-                    byte[] data = StreamUtils.copyToByteArray(input);
-                    String encoded = Base64.getEncoder().encodeToString(data);
-                    return Optional.of(String.format("data:%s;base64,%s", mimetype, encoded));
-                } catch (IOException | URISyntaxException e) {
-                    logger.warn("Failed to convert file URI to data URI: " + resourceURI, e);
-                    return Optional.empty();
-                }
-            }
-        }
-        return Optional.of(resourceURI);
+        return logoService.resolveImageURI(resourceURI);
     }
 
     /**
-     * Checks whether starting a proxy violates the max instances of this spec and user.
+     * Checks whether starting a proxy violates the max instances of this spec and user and reserves an instance.
      * This corresponds to the `max-instances` property of an app.
+     * The check and reservation is atomic, see {@link ProxyInstanceCounter}. When the proxy cannot be started, the
+     * reservation must be released using {@link #releaseInstance(String)}.
      */
-    protected boolean validateMaxInstances(ProxySpec spec) {
+    protected boolean reserveInstance(ProxySpec spec, String proxyId) {
         Integer maxInstances = shinyProxySpecProvider.getMaxInstancesForSpec(spec);
 
-        if (maxInstances == -1) {
-            return true;
+        if (maxInstances != -1 && distributedStore) {
+            // proxies started by other replicas are not known by the counter
+            long currentAmountOfInstances = proxyService.getUserProxiesBySpecId(spec.getId()).count();
+            if (currentAmountOfInstances >= maxInstances) {
+                return false;
+            }
         }
 
-        // note: there is a very small change that the user is able to start more instances than allowed, if the user
-        // starts many proxies at once. E.g. in the following scenario:
-        // - max proxies = 2
-        // - user starts a proxy
-        // - user sends a start proxy request -> this function is called and returns true
-        // - just before this new proxy is added to the list of active proxies, the user sends a new start proxy request
-        // - again this new proxy is allowed, because there is still only one proxy in the list of active proxies
-        // -> the user has three proxies running.
-        // Because of chance that this happens is small and that the consequences are low, we accept this risk.
-        long currentAmountOfInstances = proxyService.getUserProxiesBySpecId(spec.getId()).count();
-
-        return currentAmountOfInstances < maxInstances;
+        return proxyInstanceCounter.tryReserve(userService.getCurrentUserId(), spec.getId(), proxyId, maxInstances);
+    }
+
+    protected void releaseInstance(String proxyId) {
+        proxyInstanceCounter.release(proxyId);
     }
 
     private <T> T coalesce(T first, T second) {
@@ -306,7 +382,48 @@ public abstract class BaseController {
     }
 
     private String getLogo(String logo) {
-        return logoCache.get(logo, this::resolveImageURI).orElse(null);
+        // not cached here: LogoService caches file:// logos and picks up changes of the file
+        return resolveImageURI(logo).orElse(null);
+    }
+
+    private record AccessProfile(String userId, List<String> authorities) {
+
+        private static AccessProfile of(Authentication authentication, String userId) {
+            if (authentication == null) {
+                return new AccessProfile(userId, List.of());
+            }
+            List<String> authorities = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .sorted()
+                .toList();
+            return new AccessProfile(userId, authorities);
+        }
+
+    }
+
+    private record AppListModel(List<ProxySpec> apps, Thymeleaf.GroupedProxySpecs groupedApps) {
+    }
+
+    private record AppListCachePolicy(boolean cacheable, boolean includeUserId) {
+
+        private static AppListCachePolicy of(List<ProxySpec> specs) {
+            boolean cacheable = true;
+            boolean includeUserId = false;
+            for (ProxySpec spec : specs) {
+                AccessControl accessControl = spec.getAccessControl();
+                if (accessControl == null) {
+                    continue;
+                }
+                if (accessControl.getExpression() != null || accessControl.getStrictExpression() != null) {
+                    cacheable = false;
+                }
+                if (accessControl.getUsers() != null && accessControl.getUsers().length > 0) {
+                    includeUserId = true;
+                }
+            }
+            return new AppListCachePolicy(cacheable, includeUserId);
+        }
+
     }
 
     @Data
@@ -36,15 +36,20 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
 
 @Controller
 public class HeartbeatController {
 
+    private static final int MAX_BATCH_SIZE = 100;
+
     @Inject
     private HeartbeatService heartbeatService;
 
@@ -111,6 +116,71 @@ public class HeartbeatController {
         return ApiResponse.success();
     }
 
+    /**
+     * Endpoint used to send the heartbeats of multiple apps at once, i.e. the apps opened in the different tabs of a
+     * browser (see shiny.connections.js). Every proxy id is handled as in {@link #heartbeat(String)}, but the
+     * authentication and user are only looked up once.
+     */
+    @Operation(summary = "Force an heartbeat for multiple apps. Returns the ids of the apps that have been stopped.", tags = "ShinyProxy")
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "200",
+            description = "Heartbeats sent.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = BatchHeartbeatResultDto.class),
+                    examples = {
+                        @ExampleObject(value = "{\"status\":\"success\", \"data\": {\"stoppedProxyIds\": [\"b34d416e-ce6e-4351-a126-8836c88f2200\"]}}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "400",
+            description = "Invalid request.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(value = "{\"status\":\"fail\", \"data\": \"Too many proxy ids\"}")
+                    }
+                )
+            }),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "401",
+            description = "User is not authenticated.",
+            content = {
+                @Content(
+                    mediaType = "application/json",
+                    examples = {
+                        @ExampleObject(value = "{\"message\":\"shinyproxy_authentication_required\",\"status\":\"fail\"}")
+                    }
+                )
+            }),
+    })
+    @RequestMapping(value = "/heartbeat", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<ApiResponse<BatchHeartbeatResultDto>> heartbeats(@RequestBody BatchHeartbeatDto batchHeartbeatDto) {
+        if (batchHeartbeatDto.getProxyIds() == null) {
+            return ApiResponse.fail("Missing proxyIds");
+        }
+        if (batchHeartbeatDto.getProxyIds().size() > MAX_BATCH_SIZE) {
+            return ApiResponse.fail("Too many proxy ids");
+        }
+
+        String userId = userService.getCurrentUserId();
+        List<String> stoppedProxyIds = new ArrayList<>();
+        for (String proxyId : batchHeartbeatDto.getProxyIds()) {
+            Proxy proxy = proxyId != null ? proxyService.getProxy(proxyId) : null;
+            if (proxy == null || proxy.getStatus().isUnavailable() || userId == null || !userId.equals(proxy.getUserId())) {
+                stoppedProxyIds.add(proxyId);
+                continue;
+            }
+            heartbeatService.heartbeatReceived(HeartbeatService.HeartbeatSource.FALLBACK, proxy, null);
+        }
+
+        return ApiResponse.success(new BatchHeartbeatResultDto(stoppedProxyIds));
+    }
 
     /**
      * Provides info to about the heartbeat, max lifetime etc. of this app.
@@ -169,6 +239,32 @@ public class HeartbeatController {
     }
 
 
+    public static class BatchHeartbeatDto {
+
+        private List<String> proxyIds;
+
+        public List<String> getProxyIds() {
+            return proxyIds;
+        }
+
+        public void setProxyIds(List<String> proxyIds) {
+            this.proxyIds = proxyIds;
+        }
+    }
+
+    public static class BatchHeartbeatResultDto {
+
+        private final List<String> stoppedProxyIds;
+
+        private BatchHeartbeatResultDto(List<String> stoppedProxyIds) {
+            this.stoppedProxyIds = stoppedProxyIds;
+        }
+
+        public List<String> getStoppedProxyIds() {
+            return stoppedProxyIds;
+        }
+    }
+
     private static class HeartBeatInfoDto {
 
         private final Long lastHeartbeat;
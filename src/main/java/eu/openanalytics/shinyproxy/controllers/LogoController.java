@@ -0,0 +1,72 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.controllers;
+
+import eu.openanalytics.shinyproxy.LogoService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.Optional;
+
+@Controller
+public class LogoController {
+
+    @Inject
+    private LogoService logoService;
+
+    /**
+     * Serves a logo loaded from a `file://` URI, see {@link LogoService}.
+     * The id of the logo is the hash of its content, therefore the response can be cached indefinitely.
+     * Only when the logo changed since the URL was created, the (new) content must be revalidated.
+     */
+    @RequestMapping(value = "/logo/{logoId}", method = RequestMethod.GET)
+    public ResponseEntity<byte[]> logo(@PathVariable String logoId, WebRequest request) {
+        Optional<LogoService.Logo> logo = logoService.getLogo(logoId);
+        if (logo.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        CacheControl cacheControl;
+        if (logo.get().current()) {
+            cacheControl = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+        } else {
+            cacheControl = CacheControl.noCache().cachePrivate();
+        }
+        String etag = "\"" + logo.get().etag() + "\"";
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(cacheControl)
+            .contentType(MediaType.parseMediaType(logo.get().mimeType()))
+            .body(logo.get().data());
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.runtimevalues;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The timestamps (in milliseconds since the epoch) at which a proxy reached the phases of its startup.
+ */
+public class StartupTimeline {
+
+    public enum Phase {
+        /**
+         * The user (or app_direct) requested to start the app.
+         */
+        Requested,
+        /**
+         * The container has been created (including pulling the image and scheduling) and ShinyProxy started
+         * checking whether the app is ready.
+         */
+        ContainerStarted,
+        /**
+         * The app is ready to receive requests.
+         */
+        Ready,
+        /**
+         * The first response of the app has been proxied.
+         */
+        FirstByte
+    }
+
+    private final Map<Phase, Long> timestamps = new ConcurrentHashMap<>();
+
+    public StartupTimeline() {
+    }
+
+    @JsonCreator
+    public StartupTimeline(Map<Phase, Long> timestamps) {
+        this.timestamps.putAll(timestamps);
+    }
+
+    /**
+     * Records the current time for the given phase, unless the phase was already reached.
+     *
+     * @return whether the phase was not yet reached
+     */
+    public boolean mark(Phase phase) {
+        return timestamps.putIfAbsent(phase, System.currentTimeMillis()) == null;
+    }
+
+    public boolean hasReached(Phase phase) {
+        return timestamps.containsKey(phase);
+    }
+
+    @JsonValue
+    public Map<Phase, Long> getTimestamps() {
+        return new EnumMap<>(timestamps);
+    }
+
+    /**
+     * @return the duration between the two phases, or null when one of the phases was not reached
+     */
+    public Duration getDuration(Phase from, Phase to) {
+        Long start = timestamps.get(from);
+        Long end = timestamps.get(to);
+        if (start == null || end == null) {
+            return null;
+        }
+        return Duration.ofMillis(end - start);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        Phase previous = null;
+        for (Phase phase : Phase.values()) {
+            if (previous != null) {
+                Duration duration = getDuration(previous, phase);
+                if (duration == null) {
+                    break;
+                }
+                if (!result.isEmpty()) {
+                    result.append(" + ");
+                }
+                result.append(String.format("%.1fs", duration.toMillis() / 1000.0));
+            }
+            previous = phase;
+        }
+        return result.toString();
+    }
+
+}
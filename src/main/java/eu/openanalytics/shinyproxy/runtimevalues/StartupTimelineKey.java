@@ -0,0 +1,62 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.runtimevalues;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValueKey;
+
+public class StartupTimelineKey extends RuntimeValueKey<StartupTimeline> {
+
+    public static final StartupTimelineKey inst = new StartupTimelineKey();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public StartupTimelineKey() {
+        super("openanalytics.eu/sp-startup-timeline",
+            "SHINYPROXY_STARTUP_TIMELINE",
+            false,
+            false,
+            false,
+            false,
+            true,
+            false,
+            StartupTimeline.class);
+    }
+
+    @Override
+    public StartupTimeline deserializeFromString(String value) {
+        try {
+            return objectMapper.readValue(value, StartupTimeline.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String serializeToString(StartupTimeline value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -96,6 +96,10 @@ Shiny.admin = {
                     data: 'imageTag',
                     className: 'admin-monospace',
                 },
+                {
+                    data: 'startupTime',
+                    className: 'admin-monospace',
+                },
                 {
                     data: null,
                     render: function (data, type) {
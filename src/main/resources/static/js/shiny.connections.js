@@ -21,25 +21,136 @@
 Shiny = window.Shiny || {};
 Shiny.connections = {
 
+    /**
+     * State of the coordination of heartbeats between the tabs of the browser, see _initHeartBeatCoordinator.
+     */
+    _heartBeats: {
+        channel: null,
+        tabId: null,
+        tabs: {},
+    },
+
     /**
      * Starts the process of sending heartbeats. This method is only used as fallback when we cannot piggy-back
      * heartbeats on either a websocket connection or AJAX requests of the Shiny app itself.
      * Therefore heartbeats are only sent when no WebSocket connection is open and when there were no AJAX requests
      * in the last `Shiny.heartBeatRate` milliseconds.
+     * When supported by the browser, the heartbeats of all tabs are combined into a single request per interval.
      */
     startHeartBeats: function () {
         Shiny.connections.sendHeartBeat(); // send heartbeat right after loading app to validate the app is working
+        const coordinated = Shiny.connections._initHeartBeatCoordinator();
         setInterval(function () {
-            if (Shiny.app.runtimeState.appStopped || Shiny.app.runtimeState.proxy === null) {
-                return;
+            const proxyIds = Shiny.connections._heartBeatRequired() ? [Shiny.app.runtimeState.proxy.id] : [];
+            if (coordinated) {
+                Shiny.connections._coordinateHeartBeats(proxyIds);
+            } else if (proxyIds.length > 0) {
+                Shiny.connections.sendHeartBeat();
+            }
+        }, Shiny.app.staticState.heartBeatRate);
+    },
+
+    /**
+     * @return whether this tab has to send a heartbeat for its app
+     */
+    _heartBeatRequired: function () {
+        if (Shiny.app.runtimeState.appStopped || Shiny.app.runtimeState.proxy === null) {
+            return false;
+        }
+        if (Shiny.connections._webSocketConnectionIsOpen()) {
+            return false;
+        }
+        const lastHeartbeat = Date.now() - Shiny.app.runtimeState.lastHeartbeatTime;
+        return Shiny.app.runtimeState.proxy.id !== Shiny.app.runtimeState.proxy.targetId || lastHeartbeat > Shiny.app.staticState.heartBeatRate;
+    },
+
+    /**
+     * Sets up a BroadcastChannel between the tabs of this browser. Every interval, each tab publishes the proxy ids
+     * it needs a heartbeat for, and a single tab (the one with the lowest id) sends the heartbeats of all tabs in one
+     * request. The result of that request is published to all tabs.
+     * @return whether heartbeats are coordinated (i.e. BroadcastChannel is supported)
+     */
+    _initHeartBeatCoordinator: function () {
+        if (typeof BroadcastChannel === 'undefined') {
+            return false;
+        }
+        const state = Shiny.connections._heartBeats;
+        state.tabId = Date.now().toString(36) + "-" + Math.random().toString(36).substring(2);
+        state.channel = new BroadcastChannel("shinyproxy-heartbeats-" + Shiny.common.staticState.contextPath);
+        state.channel.onmessage = function (event) {
+            const message = event.data;
+            if (message.type === "request") {
+                state.tabs[message.tabId] = {proxyIds: message.proxyIds, time: Date.now()};
+            } else if (message.type === "result") {
+                Shiny.connections._handleHeartBeatsResult(message);
+            }
+        };
+        return true;
+    },
+
+    _coordinateHeartBeats: function (proxyIds) {
+        const state = Shiny.connections._heartBeats;
+        const now = Date.now();
+        state.tabs[state.tabId] = {proxyIds: proxyIds, time: now};
+        state.channel.postMessage({type: "request", tabId: state.tabId, proxyIds: proxyIds});
+
+        // forget tabs that have been closed
+        for (const [tabId, tab] of Object.entries(state.tabs)) {
+            if (now - tab.time > 2 * Shiny.app.staticState.heartBeatRate) {
+                delete state.tabs[tabId];
             }
-            if (!Shiny.connections._webSocketConnectionIsOpen()) {
-                const lastHeartbeat = Date.now() - Shiny.app.runtimeState.lastHeartbeatTime;
-                if (Shiny.app.runtimeState.proxy.id !== Shiny.app.runtimeState.proxy.targetId || lastHeartbeat > Shiny.app.staticState.heartBeatRate) {
-                    Shiny.connections.sendHeartBeat();
+        }
+
+        if (Object.keys(state.tabs).sort()[0] !== state.tabId) {
+            // another tab sends the heartbeats
+            return;
+        }
+        const allProxyIds = [...new Set(Object.values(state.tabs).flatMap(tab => tab.proxyIds))];
+        if (allProxyIds.length > 0) {
+            Shiny.connections._sendHeartBeats(allProxyIds);
+        }
+    },
+
+    /**
+     * Sends the heartbeats of multiple apps in a single request and publishes the result to all tabs.
+     */
+    _sendHeartBeats: async function (proxyIds) {
+        let result;
+        try {
+            const resp = await fetch(Shiny.api.buildURL("heartbeat"), {
+                method: 'POST',
+                body: JSON.stringify({"proxyIds": proxyIds}),
+                headers: {
+                    'Content-Type': 'application/json'
+                },
+            });
+            if (resp.status === 401) {
+                result = {type: "result", loggedOut: true, stoppedProxyIds: []};
+            } else {
+                const json = await Shiny.api._getResponseJson(resp);
+                if (json === null) {
+                    return;
                 }
+                result = {type: "result", loggedOut: false, stoppedProxyIds: json.data.stoppedProxyIds};
             }
-        }, Shiny.app.staticState.heartBeatRate);
+        } catch (error) {
+            // server or connection crashed, let app reconnect
+            return;
+        }
+        Shiny.connections._heartBeats.channel.postMessage(result);
+        Shiny.connections._handleHeartBeatsResult(result);
+    },
+
+    _handleHeartBeatsResult: function (result) {
+        if (Shiny.app.runtimeState.appStopped || Shiny.app.runtimeState.proxy === null) {
+            // if stopped in meantime -> ignore
+            return;
+        }
+        if (result.loggedOut) {
+            Shiny.ui.showLoggedOutPage();
+        } else if (result.stoppedProxyIds.includes(Shiny.app.runtimeState.proxy.id)) {
+            Shiny.ui.showStoppedPage();
+        }
     },
 
     /**
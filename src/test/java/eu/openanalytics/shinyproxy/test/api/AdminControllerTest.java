@@ -23,9 +23,18 @@ package eu.openanalytics.shinyproxy.test.api;
 import eu.openanalytics.containerproxy.test.helpers.ShinyProxyInstance;
 import eu.openanalytics.shinyproxy.test.helpers.ApiTestHelper;
 import eu.openanalytics.shinyproxy.test.helpers.Response;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonString;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
 public class AdminControllerTest {
 
     private static final ShinyProxyInstance inst = new ShinyProxyInstance("application-test-api.yml");
@@ -63,4 +72,99 @@ public class AdminControllerTest {
         resp.jsonSuccess();
     }
 
+    @Test
+    public void testReloadSpecsWithoutAuth() {
+        Response resp = apiTestHelper.callWithoutAuth(apiTestHelper.createPostRequest("/admin/specs/reload"));
+        resp.assertAuthenticationRequired();
+
+        resp = apiTestHelper.callWithAuthDemo2(apiTestHelper.createPostRequest("/admin/specs/reload"));
+        resp.assertAuthenticationRequired();
+    }
+
+    @Test
+    public void testReloadSpecsFromStartupConfigFile() {
+        // without proxy.spec-reload-config-file, the file used during startup is reloaded, which did not change
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createPostRequest("/admin/specs/reload"));
+        Assertions.assertTrue(resp.jsonSuccess() instanceof JsonArray);
+    }
+
+    @Test
+    public void testReloadSpecs() throws IOException {
+        Path configFile = Files.createTempFile("shinyproxy-reload", ".yml");
+        try (ShinyProxyInstance reloadInst = new ShinyProxyInstance("application-test-api.yml", Map.of("proxy.spec-reload-config-file", configFile.toString()))) {
+            ApiTestHelper reloadApiTestHelper = new ApiTestHelper(reloadInst);
+            Files.writeString(configFile, """
+                proxy:
+                  specs:
+                    - id: new_app
+                      container-image: openanalytics/shinyproxy-integration-test-app:latest
+                """);
+
+            Response resp = reloadApiTestHelper.callWithAuth(reloadApiTestHelper.createPostRequest("/admin/specs/reload"));
+            List<String> changedSpecIds = resp.jsonSuccess().asJsonArray().getValuesAs(JsonString::getString);
+            Assertions.assertTrue(changedSpecIds.contains("new_app"));
+            Assertions.assertTrue(changedSpecIds.contains("01_hello"));
+
+            // reloading the same file does not change anything
+            resp = reloadApiTestHelper.callWithAuth(reloadApiTestHelper.createPostRequest("/admin/specs/reload"));
+            Assertions.assertEquals(0, resp.jsonSuccess().asJsonArray().size());
+        } finally {
+            Files.deleteIfExists(configFile);
+        }
+    }
+
+    @Test
+    public void testReloadInvalidSpecs() throws IOException {
+        Path configFile = Files.createTempFile("shinyproxy-reload", ".yml");
+        try (ShinyProxyInstance reloadInst = new ShinyProxyInstance("application-test-api.yml", Map.of("proxy.spec-reload-config-file", configFile.toString()))) {
+            ApiTestHelper reloadApiTestHelper = new ApiTestHelper(reloadInst);
+
+            // same checks as during startup
+            Files.writeString(configFile, """
+                proxy:
+                  specs:
+                    - id: new_app
+                      container-image: openanalytics/shinyproxy-integration-test-app:latest
+                      readiness-log-pattern: "["
+                """);
+            Response resp = reloadApiTestHelper.callWithAuth(reloadApiTestHelper.createPostRequest("/admin/specs/reload"));
+            resp.assertFail("Configuration error: invalid value for readiness-log-pattern: '['");
+
+            Files.writeString(configFile, """
+                proxy:
+                  specs:
+                    - id: new_app
+                      container-image: openanalytics/shinyproxy-integration-test-app:latest
+                      iframe-script-injection-max-buffer-size: abc
+                """);
+            resp = reloadApiTestHelper.callWithAuth(reloadApiTestHelper.createPostRequest("/admin/specs/reload"));
+            resp.assertFail("Configuration error: invalid value for iframe-script-injection-max-buffer-size: 'abc'");
+
+            Files.writeString(configFile, """
+                proxy:
+                  specs:
+                    - id: new_app
+                      container-image: openanalytics/shinyproxy-integration-test-app:latest
+                    - id: new_app
+                      container-image: openanalytics/shinyproxy-integration-test-app:latest
+                """);
+            resp = reloadApiTestHelper.callWithAuth(reloadApiTestHelper.createPostRequest("/admin/specs/reload"));
+            resp.assertFail("Configuration error: spec with id 'new_app' is defined multiple times");
+
+            // the specs were not changed, i.e. 01_hello is still removed by a valid reload
+            Files.writeString(configFile, """
+                proxy:
+                  specs:
+                    - id: new_app
+                      container-image: openanalytics/shinyproxy-integration-test-app:latest
+                """);
+            resp = reloadApiTestHelper.callWithAuth(reloadApiTestHelper.createPostRequest("/admin/specs/reload"));
+            List<String> changedSpecIds = resp.jsonSuccess().asJsonArray().getValuesAs(JsonString::getString);
+            Assertions.assertTrue(changedSpecIds.contains("new_app"));
+            Assertions.assertTrue(changedSpecIds.contains("01_hello"));
+        } finally {
+            Files.deleteIfExists(configFile);
+        }
+    }
+
 }
@@ -208,7 +208,12 @@ public class AppControllerTest {
         resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_proxy/" + id + "/").addHeader("Accept", "text/html"));
         resp.assertHtmlSuccess();
         Assertions.assertTrue(resp.body().contains("Welcome to nginx!"));
-        Assertions.assertTrue(resp.body().endsWith("<script src='/12021caeaa8e333d7ac0131d8f85062c256dfeb2/js/shiny.iframe.js'></script>"));
+        // script is injected directly after the head tag
+        Assertions.assertTrue(resp.body().contains("<head><script src='/12021caeaa8e333d7ac0131d8f85062c256dfeb2/js/shiny.iframe.js'></script>"));
+        Assertions.assertFalse(resp.body().endsWith("</script>"));
+        // script is injected while streaming the response -> no Content-Length
+        Assertions.assertNull(resp.header("Content-Length"));
+        Assertions.assertEquals("chunked", resp.header("Transfer-Encoding"));
 
         // normal sub-path request
         resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_proxy/" + id + "/my-path"));
@@ -234,6 +239,19 @@ public class AppControllerTest {
         // other user with sub-path and post
         resp = apiTestHelper.callWithAuthDemo2(apiTestHelper.createPostRequest("/app_proxy/" + id + "/my-path"));
         resp.assertAppStoppedOrNonExistent();
+
+        // request with proxy id in query string
+        resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_proxy/" + id + "/?sp_proxy_idx=abc&test=1&sp_proxy_id=" + id));
+        resp.assertHtmlSuccess();
+        Assertions.assertTrue(resp.body().contains("Welcome to nginx!"));
+
+        // request with invalid proxy id in query string
+        resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_proxy/" + id + "/?sp_proxy_id=abc&sp_proxy_id=" + id));
+        resp.assertAppStoppedOrNonExistent();
+
+        // other user with proxy id in query string
+        resp = apiTestHelper.callWithAuthDemo2(apiTestHelper.createRequest("/app_proxy/" + id + "/?sp_proxy_id=" + id));
+        resp.assertAppStoppedOrNonExistent();
     }
 
     @Test
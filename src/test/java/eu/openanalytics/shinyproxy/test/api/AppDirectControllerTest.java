@@ -23,11 +23,21 @@ package eu.openanalytics.shinyproxy.test.api;
 import eu.openanalytics.containerproxy.test.helpers.ShinyProxyInstance;
 import eu.openanalytics.shinyproxy.test.helpers.ApiTestHelper;
 import eu.openanalytics.shinyproxy.test.helpers.Response;
+import jakarta.json.JsonArray;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 public class AppDirectControllerTest {
 
     private static final ShinyProxyInstance inst = new ShinyProxyInstance("application-test-api.yml");
@@ -136,6 +146,33 @@ public class AppDirectControllerTest {
         Assertions.assertFalse(resp.body().contains("js/shiny.iframe.js"));
     }
 
+    @Test
+    public void testConcurrentStart() throws Exception {
+        // many concurrent requests for an app that is not yet running (e.g. the assets of an embedded app), should start a single app
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<Future<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                responses.add(executor.submit(() -> {
+                    latch.await();
+                    return apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_direct/01_hello/"));
+                }));
+            }
+            latch.countDown();
+            for (Future<Response> response : responses) {
+                Response resp = response.get();
+                resp.assertHtmlSuccess();
+                Assertions.assertTrue(resp.body().contains("Welcome to nginx!"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/api/proxy"));
+        Assertions.assertEquals(1, resp.jsonSuccess().asJsonArray().size());
+    }
+
     @Test
     public void testRedirect() {
         // no slash, should redirect to url with slash
@@ -144,4 +181,63 @@ public class AppDirectControllerTest {
         Assertions.assertEquals("http://localhost:7583/app_direct/01_hello/", resp.header("Location"));
     }
 
+    @Test
+    public void testStartDoesNotBlockRequestThread() throws Exception {
+        // a single worker thread, while the app is starting, other requests must still be handled
+        try (ShinyProxyInstance inst = new ShinyProxyInstance("application-test-api.yml", Map.of("server.undertow.threads.worker", "1"))) {
+            ApiTestHelper apiTestHelper = new ApiTestHelper(inst);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Response> startResponse = executor.submit(() -> apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_direct/01_hello/")));
+
+                boolean seenStarting = false;
+                while (!startResponse.isDone()) {
+                    JsonArray proxies = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/api/proxy")).jsonSuccess().asJsonArray();
+                    if (!proxies.isEmpty() && !proxies.getJsonObject(0).getString("status").equals("Up")) {
+                        seenStarting = true;
+                        break;
+                    }
+                    Thread.sleep(10);
+                }
+                Assertions.assertTrue(seenStarting, "request thread was blocked while the app was starting");
+
+                Response resp = startResponse.get(5, TimeUnit.MINUTES);
+                resp.assertHtmlSuccess();
+                Assertions.assertTrue(resp.body().contains("Welcome to nginx!"));
+            } finally {
+                executor.shutdownNow();
+                inst.stopAllApps();
+            }
+        }
+    }
+
+    @Test
+    public void testStartTimeout() throws Exception {
+        try (ShinyProxyInstance inst = new ShinyProxyInstance("application-test-api.yml", Map.of("proxy.app-direct-startup-timeout", "100ms"))) {
+            ApiTestHelper apiTestHelper = new ApiTestHelper(inst);
+            try {
+                Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_direct/01_hello/"));
+                Assertions.assertEquals(500, resp.code());
+
+                // the app keeps starting in the background
+                JsonArray proxies = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/api/proxy")).jsonSuccess().asJsonArray();
+                Assertions.assertEquals(1, proxies.size());
+                long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+                while (!proxies.getJsonObject(0).getString("status").equals("Up")) {
+                    Assertions.assertTrue(System.currentTimeMillis() < deadline, "app did not start");
+                    Thread.sleep(100);
+                    proxies = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/api/proxy")).jsonSuccess().asJsonArray();
+                }
+
+                // once it's up, the same app is used
+                resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/app_direct/01_hello/"));
+                resp.assertHtmlSuccess();
+                Assertions.assertTrue(resp.body().contains("Welcome to nginx!"));
+                Assertions.assertEquals(1, apiTestHelper.callWithAuth(apiTestHelper.createRequest("/api/proxy")).jsonSuccess().asJsonArray().size());
+            } finally {
+                inst.stopAllApps();
+            }
+        }
+    }
+
 }
@@ -23,6 +23,7 @@ package eu.openanalytics.shinyproxy.test.api;
 import eu.openanalytics.containerproxy.test.helpers.ShinyProxyInstance;
 import eu.openanalytics.shinyproxy.test.helpers.ApiTestHelper;
 import eu.openanalytics.shinyproxy.test.helpers.Response;
+import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -53,6 +54,9 @@ public class HeartbeatControllerTest {
 
         resp = apiTestHelper.callWithoutAuth(apiTestHelper.createRequest("/heartbeat/" + RANDOM_UUID));
         resp.assertAuthenticationRequired();
+
+        resp = apiTestHelper.callWithoutAuth(apiTestHelper.createPostRequest("/heartbeat", "{\"proxyIds\": [\"" + RANDOM_UUID + "\"]}"));
+        resp.assertAuthenticationRequired();
     }
 
     @Test
@@ -84,4 +88,23 @@ public class HeartbeatControllerTest {
         resp.assertAppStoppedOrNonExistent();
     }
 
+    @Test
+    public void testBatchWithApp() {
+        String id = inst.client.startProxy("01_hello");
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createPostRequest("/heartbeat", "{\"proxyIds\": [\"" + id + "\", \"" + RANDOM_UUID + "\"]}"));
+        JsonArray stoppedProxyIds = resp.jsonSuccess().asJsonObject().getJsonArray("stoppedProxyIds");
+        Assertions.assertEquals(1, stoppedProxyIds.size());
+        Assertions.assertEquals(RANDOM_UUID, stoppedProxyIds.getString(0));
+
+        // test as other user
+        resp = apiTestHelper.callWithAuthDemo2(apiTestHelper.createPostRequest("/heartbeat", "{\"proxyIds\": [\"" + id + "\"]}"));
+        stoppedProxyIds = resp.jsonSuccess().asJsonObject().getJsonArray("stoppedProxyIds");
+        Assertions.assertEquals(1, stoppedProxyIds.size());
+        Assertions.assertEquals(id, stoppedProxyIds.getString(0));
+
+        // missing proxy ids
+        resp = apiTestHelper.callWithAuth(apiTestHelper.createPostRequest("/heartbeat", "{}"));
+        resp.assertFail("Missing proxyIds");
+    }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.api;
+
+import eu.openanalytics.containerproxy.test.helpers.ShinyProxyInstance;
+import eu.openanalytics.shinyproxy.test.helpers.ApiTestHelper;
+import eu.openanalytics.shinyproxy.test.helpers.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LogoControllerTest {
+
+    private static final Pattern LOGO_PATTERN = Pattern.compile("/logo/([0-9a-f]{32})");
+    private static final Path logoFile = createLogoFile();
+    private static final ShinyProxyInstance inst = new ShinyProxyInstance("application-test-api.yml", Map.of("proxy.logo-url", logoFile.toUri().toString()));
+    private static final ApiTestHelper apiTestHelper = new ApiTestHelper(inst);
+
+    @AfterAll
+    public static void afterAll() throws IOException {
+        inst.close();
+        Files.deleteIfExists(logoFile);
+    }
+
+    @Test
+    public void testNonExistingLogo() {
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/logo/abc"));
+        Assertions.assertEquals(404, resp.code());
+    }
+
+    @Test
+    public void testLogo() throws IOException {
+        String logoId = getLogoId();
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/logo/" + logoId));
+        Assertions.assertEquals(200, resp.code());
+        Assertions.assertEquals(Files.readString(logoFile), resp.body());
+        Assertions.assertEquals("image/png", resp.header("Content-Type"));
+        Assertions.assertEquals("\"" + logoId + "\"", resp.header("ETag"));
+        assertImmutable(resp);
+    }
+
+    @Test
+    public void testNotModified() {
+        String logoId = getLogoId();
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/logo/" + logoId)
+            .header("If-None-Match", "\"" + logoId + "\""));
+        Assertions.assertEquals(304, resp.code());
+        Assertions.assertEquals("\"" + logoId + "\"", resp.header("ETag"));
+        Assertions.assertEquals("", resp.body());
+        assertImmutable(resp);
+
+        // a different ETag results in the complete response
+        resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/logo/" + logoId)
+            .header("If-None-Match", "\"abc\""));
+        Assertions.assertEquals(200, resp.code());
+    }
+
+    @Test
+    public void testChangedLogo() throws IOException {
+        String oldLogoId = getLogoId();
+        String content = "logo changed at " + System.nanoTime();
+        Files.writeString(logoFile, content);
+        Files.setLastModifiedTime(logoFile, FileTime.fromMillis(Files.getLastModifiedTime(logoFile).toMillis() + 10_000));
+
+        // the previous URL returns the new content, but it must be revalidated
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/logo/" + oldLogoId));
+        Assertions.assertEquals(200, resp.code());
+        Assertions.assertEquals(content, resp.body());
+        String cacheControl = resp.header("Cache-Control");
+        Assertions.assertTrue(cacheControl.contains("no-cache"), cacheControl);
+        Assertions.assertFalse(cacheControl.contains("immutable"), cacheControl);
+
+        // new pages use a new URL, which can be cached indefinitely
+        String newLogoId = getLogoId();
+        Assertions.assertNotEquals(oldLogoId, newLogoId);
+        Assertions.assertEquals("\"" + newLogoId + "\"", resp.header("ETag"));
+        resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/logo/" + newLogoId));
+        Assertions.assertEquals(200, resp.code());
+        Assertions.assertEquals(content, resp.body());
+        assertImmutable(resp);
+    }
+
+    private static void assertImmutable(Response resp) {
+        String cacheControl = resp.header("Cache-Control");
+        Assertions.assertNotNull(cacheControl);
+        Assertions.assertTrue(cacheControl.contains("max-age=31536000"), cacheControl);
+        Assertions.assertTrue(cacheControl.contains("private"), cacheControl);
+        Assertions.assertTrue(cacheControl.contains("immutable"), cacheControl);
+    }
+
+    private static String getLogoId() {
+        Response resp = apiTestHelper.callWithAuth(apiTestHelper.createRequest("/"));
+        resp.assertHtmlSuccess();
+        Matcher matcher = LOGO_PATTERN.matcher(resp.body());
+        Assertions.assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+
+    private static Path createLogoFile() {
+        try {
+            Path file = Files.createTempFile("shinyproxy-logo", ".png");
+            Files.writeString(file, "logo", StandardCharsets.UTF_8);
+            return file;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
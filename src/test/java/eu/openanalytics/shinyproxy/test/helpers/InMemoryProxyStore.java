@@ -0,0 +1,61 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.helpers;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.store.IProxyStore;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Proxy store for unit tests that don't start ShinyProxy.
+ */
+public class InMemoryProxyStore implements IProxyStore {
+
+    private final ConcurrentHashMap<String, Proxy> proxies = new ConcurrentHashMap<>();
+
+    @Override
+    public void addProxy(Proxy proxy) {
+        proxies.put(proxy.getId(), proxy);
+    }
+
+    @Override
+    public void removeProxy(Proxy proxy) {
+        proxies.remove(proxy.getId());
+    }
+
+    @Override
+    public void updateProxy(Proxy proxy) {
+        proxies.put(proxy.getId(), proxy);
+    }
+
+    @Override
+    public Collection<Proxy> getAllProxies() {
+        return proxies.values();
+    }
+
+    @Override
+    public Proxy getProxy(String proxyId) {
+        return proxies.get(proxyId);
+    }
+
+}
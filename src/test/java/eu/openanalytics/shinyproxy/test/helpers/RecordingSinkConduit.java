@@ -0,0 +1,153 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.helpers;
+
+import org.junit.jupiter.api.Assertions;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.StreamSinkConduit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Last conduit of a chain in unit tests, records all bytes that are written.
+ * Simulates back-pressure by accepting only part of the bytes of a write.
+ */
+public class RecordingSinkConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Random random = new Random(42);
+    private final int acceptLimit;
+    private boolean blocked = false;
+    private boolean terminated = false;
+    private int writes = 0;
+    private int gatheringWrites = 0;
+    private int maxWriteSize = 0;
+
+    /**
+     * @param acceptLimit the maximum number of bytes accepted by a single write, a random number of bytes up to
+     *                    this limit is accepted. If 0, all bytes are accepted.
+     */
+    public RecordingSinkConduit(int acceptLimit) {
+        super(null);
+        this.acceptLimit = acceptLimit;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        if (terminated) {
+            throw new IllegalStateException("Write after terminateWrites");
+        }
+        maxWriteSize = Math.max(maxWriteSize, src.remaining());
+        if (blocked) {
+            return 0;
+        }
+        int count = src.remaining();
+        if (acceptLimit > 0) {
+            count = Math.min(count, random.nextInt(acceptLimit + 1));
+        }
+        for (int i = 0; i < count; i++) {
+            bytes.write(src.get());
+        }
+        writes++;
+        return count;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offs, int len) {
+        gatheringWrites++;
+        long total = 0;
+        for (int i = offs; i < offs + len; ++i) {
+            total += write(srcs[i]);
+            if (srcs[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void terminateWrites() {
+        terminated = true;
+    }
+
+    @Override
+    public void truncateWrites() {
+        terminated = true;
+    }
+
+    @Override
+    public boolean flush() {
+        return !blocked;
+    }
+
+    /**
+     * Writes the data to the conduit in chunks of the given size, terminates the writes and flushes the conduit.
+     */
+    public static void writeAndTerminate(StreamSinkConduit conduit, byte[] data, int chunkSize) throws IOException {
+        int position = 0;
+        while (position < data.length) {
+            int length = Math.min(chunkSize, data.length - position);
+            ByteBuffer buffer = ByteBuffer.wrap(data, position, length);
+            while (buffer.hasRemaining()) {
+                conduit.write(buffer);
+            }
+            position += length;
+        }
+        conduit.terminateWrites();
+        int attempts = 0;
+        while (!conduit.flush()) {
+            Assertions.assertTrue(++attempts < 10_000_000, "Conduit was not flushed");
+        }
+    }
+
+    public void setBlocked(boolean blocked) {
+        this.blocked = blocked;
+    }
+
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    public byte[] getBytes() {
+        return bytes.toByteArray();
+    }
+
+    public String getString() {
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    public int getWrites() {
+        return writes;
+    }
+
+    public int getGatheringWrites() {
+        return gatheringWrites;
+    }
+
+    public int getMaxWriteSize() {
+        return maxWriteSize;
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.containerproxy.event.UserLogoutEvent;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.service.ProxyAccessControlService;
+import eu.openanalytics.containerproxy.service.ProxyService;
+import eu.openanalytics.containerproxy.service.UserService;
+import eu.openanalytics.shinyproxy.AccessDecisionCache;
+import eu.openanalytics.shinyproxy.SpecsChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class AccessDecisionCacheTest {
+
+    private final ProxyAccessControlService proxyAccessControlService = Mockito.mock(ProxyAccessControlService.class);
+    private final ProxyService proxyService = Mockito.mock(ProxyService.class);
+    private final MockEnvironment environment = new MockEnvironment();
+    private final Authentication jack = new TestingAuthenticationToken("jack", null, "ROLE_GROUP1");
+    private final Authentication jeff = new TestingAuthenticationToken("jeff", null, "ROLE_GROUP1");
+    private final MockHttpSession jackSession = new MockHttpSession();
+    private final MockHttpSession jeffSession = new MockHttpSession();
+    private AccessDecisionCache accessDecisionCache;
+
+    @BeforeEach
+    public void setup() {
+        UserService userService = Mockito.mock(UserService.class);
+        Mockito.when(userService.getUserId(Mockito.any())).thenAnswer(invocation -> ((Authentication) invocation.getArgument(0)).getName());
+        // e.g. to convert the durations, like in ShinyProxy
+        environment.setConversionService(ApplicationConversionService.getSharedInstance());
+        accessDecisionCache = new AccessDecisionCache();
+        ReflectionTestUtils.setField(accessDecisionCache, "proxyAccessControlService", proxyAccessControlService);
+        ReflectionTestUtils.setField(accessDecisionCache, "proxyService", proxyService);
+        ReflectionTestUtils.setField(accessDecisionCache, "userService", userService);
+        ReflectionTestUtils.setField(accessDecisionCache, "environment", environment);
+        ReflectionTestUtils.setField(accessDecisionCache, "meterRegistry", new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void testCachesAllowedAccess() {
+        accessDecisionCache.init();
+        allowAccess("01_hello");
+
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Mockito.verify(proxyAccessControlService, Mockito.times(1)).canAccess(Mockito.any(), Mockito.eq("01_hello"));
+
+        // other sessions, users and authorities do not use the decision
+        Assertions.assertTrue(canAccess(jeff, jeffSession, "01_hello"));
+        Assertions.assertTrue(canAccess(new TestingAuthenticationToken("jack", null, "ROLE_GROUP2"), jackSession, "01_hello"));
+        Mockito.verify(proxyAccessControlService, Mockito.times(3)).canAccess(Mockito.any(), Mockito.eq("01_hello"));
+    }
+
+    @Test
+    public void testDeniedAccessIsNotCached() {
+        accessDecisionCache.init();
+
+        Assertions.assertFalse(canAccess(jack, jackSession, "01_hello"));
+        allowAccess("01_hello");
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+    }
+
+    @Test
+    public void testAccessBecauseOfExistingProxyIsNotCached() {
+        accessDecisionCache.init();
+        Mockito.when(proxyService.getUserProxiesBySpecId("01_hello")).thenAnswer(invocation -> Stream.of(Proxy.builder().id("1").userId("jack").specId("01_hello").build()));
+
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Mockito.verify(proxyService, Mockito.times(2)).getUserProxiesBySpecId("01_hello");
+        // the access is evaluated only once per request
+        Mockito.verify(proxyAccessControlService, Mockito.times(2)).canAccess(Mockito.any(), Mockito.eq("01_hello"));
+        Mockito.verify(proxyAccessControlService, Mockito.never()).canAccessOrHasExistingProxy(Mockito.any(), Mockito.any());
+
+        // proxy stopped
+        Mockito.when(proxyService.getUserProxiesBySpecId("01_hello")).thenAnswer(invocation -> Stream.empty());
+        Assertions.assertFalse(canAccess(jack, jackSession, "01_hello"));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        environment.setProperty("proxy.access-decision-cache-ttl", "100ms");
+        accessDecisionCache.init();
+        allowAccess("01_hello");
+
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Thread.sleep(200);
+        denyAccess("01_hello");
+        Assertions.assertFalse(canAccess(jack, jackSession, "01_hello"));
+    }
+
+    @Test
+    public void testDisabled() {
+        environment.setProperty("proxy.access-decision-cache-ttl", "0");
+        accessDecisionCache.init();
+        Mockito.when(proxyAccessControlService.canAccessOrHasExistingProxy(Mockito.any(), Mockito.any())).thenReturn(true);
+
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Mockito.verify(proxyAccessControlService, Mockito.times(2)).canAccessOrHasExistingProxy(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testSessionDestroyed() {
+        accessDecisionCache.init();
+        allowAccess("01_hello");
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jeff, jeffSession, "01_hello"));
+
+        accessDecisionCache.onHttpSessionDestroyedEvent(new HttpSessionDestroyedEvent(jackSession));
+        denyAccess("01_hello");
+        Assertions.assertFalse(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jeff, jeffSession, "01_hello"));
+    }
+
+    @Test
+    public void testLogout() {
+        accessDecisionCache.init();
+        allowAccess("01_hello");
+        MockHttpSession otherJackSession = new MockHttpSession();
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jack, otherJackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jeff, jeffSession, "01_hello"));
+
+        UserLogoutEvent event = Mockito.mock(UserLogoutEvent.class);
+        Mockito.when(event.getUserId()).thenReturn("jack");
+        accessDecisionCache.onUserLogoutEvent(event);
+        denyAccess("01_hello");
+        Assertions.assertFalse(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertFalse(canAccess(jack, otherJackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jeff, jeffSession, "01_hello"));
+    }
+
+    @Test
+    public void testSpecsChanged() {
+        accessDecisionCache.init();
+        allowAccess("01_hello");
+        allowAccess("02_hello");
+        Assertions.assertTrue(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jack, jackSession, "02_hello"));
+
+        accessDecisionCache.onSpecsChanged(new SpecsChangedEvent(Set.of("01_hello")));
+        denyAccess("01_hello");
+        denyAccess("02_hello");
+        Assertions.assertFalse(canAccess(jack, jackSession, "01_hello"));
+        Assertions.assertTrue(canAccess(jack, jackSession, "02_hello"));
+    }
+
+    private void allowAccess(String specId) {
+        Mockito.when(proxyAccessControlService.canAccess(Mockito.any(), Mockito.eq(specId))).thenReturn(true);
+    }
+
+    private void denyAccess(String specId) {
+        Mockito.when(proxyAccessControlService.canAccess(Mockito.any(), Mockito.eq(specId))).thenReturn(false);
+    }
+
+    private boolean canAccess(Authentication auth, MockHttpSession session, String specId) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        return accessDecisionCache.canAccessOrHasExistingProxy(auth, new RequestAuthorizationContext(request, Map.of("specId", specId)));
+    }
+
+}
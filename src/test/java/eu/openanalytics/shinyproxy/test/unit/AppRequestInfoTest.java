@@ -0,0 +1,140 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.shinyproxy.AppRequestInfo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link AppRequestInfo#fromURI(String)} with the regular expressions that were previously used to parse
+ * the URIs.
+ */
+public class AppRequestInfoTest {
+
+    private static final Pattern APP_INSTANCE_PATTERN = Pattern.compile(".*?/(app_i|app_direct_i)/([^/]*)/([^/]*)(/?.*)");
+    private static final Pattern APP_PATTERN = Pattern.compile(".*?/(app|app_direct)/([^/]*)(/?.*)");
+    private static final Pattern INSTANCE_NAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_.-]*$");
+
+    private static final List<String> FRAGMENTS = List.of(
+        "/", "/", "/", "app", "app_i", "app_direct", "app_direct_i", "/app/", "/app_i/", "/app_direct/", "/app_direct_i/",
+        "01_hello", "my-app", "default", "Instance.1", "_", " ", "  ", "\t", "\n", "\r", "\u2028", "\u0085", "?", "#",
+        "x?y=z", "%20", "a".repeat(64), "b".repeat(65), "\u00e9", "shiny.iframe.js", "..", "sp", "api", ":");
+
+    @Test
+    public void testKnownUris() {
+        assertSame("/app/01_hello");
+        assertSame("/app/01_hello/");
+        assertSame("/app/01_hello/sub/path?x=y");
+        assertSame("/app_direct/01_hello/sub/path/");
+        assertSame("/app_i/01_hello/default");
+        assertSame("/app_i/01_hello/default/");
+        assertSame("/app_direct_i/01_hello/default/sub/path");
+        assertSame("/context/path/app_i/01_hello/_/");
+        assertSame("/app/app_i/01_hello/default");
+        assertSame("/app_i/01_hello");
+        assertSame("/app_i/01_hello/invalid$instance/");
+        assertSame("/app_i//default/");
+        assertSame("/app/");
+        assertSame("/app/ /");
+        assertSame("/app/01_hello/   ");
+        assertSame("/index");
+        assertSame("");
+
+        AppRequestInfo appRequestInfo = AppRequestInfo.fromURI("/sp/app_direct_i/01_hello/default/sub/path");
+        Assertions.assertNotNull(appRequestInfo);
+        Assertions.assertEquals("01_hello", appRequestInfo.getAppName());
+        Assertions.assertEquals("default", appRequestInfo.getAppInstance());
+        Assertions.assertEquals("/sp/app_direct_i/01_hello/default/", appRequestInfo.getAppPath());
+        Assertions.assertEquals("sub/path", appRequestInfo.getSubPath());
+    }
+
+    @Test
+    public void testRandomUris() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder uri = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                uri.append(FRAGMENTS.get(random.nextInt(FRAGMENTS.size())));
+            }
+            assertSame(uri.toString());
+        }
+    }
+
+    private static void assertSame(String uri) {
+        AppRequestInfo expected = fromURIUsingRegex(uri);
+        AppRequestInfo actual = AppRequestInfo.fromURI(uri);
+        if (expected == null) {
+            Assertions.assertNull(actual, () -> "URI: '" + uri + "'");
+            return;
+        }
+        Assertions.assertNotNull(actual, () -> "URI: '" + uri + "'");
+        Assertions.assertEquals(expected.getAppName(), actual.getAppName(), () -> "URI: '" + uri + "'");
+        Assertions.assertEquals(expected.getAppInstance(), actual.getAppInstance(), () -> "URI: '" + uri + "'");
+        Assertions.assertEquals(expected.getAppPath(), actual.getAppPath(), () -> "URI: '" + uri + "'");
+        Assertions.assertEquals(expected.getSubPath(), actual.getSubPath(), () -> "URI: '" + uri + "'");
+    }
+
+    private static AppRequestInfo fromURIUsingRegex(String uri) {
+        Matcher appMatcher = APP_PATTERN.matcher(uri);
+        Matcher appInstanceMatcher = APP_INSTANCE_PATTERN.matcher(uri);
+        if (appInstanceMatcher.matches()) {
+            String appName = appInstanceMatcher.group(2);
+            if (appName == null || appName.trim().isEmpty()) {
+                return null;
+            }
+            String appInstance = appInstanceMatcher.group(3);
+            if (appInstance == null || appInstance.trim().isEmpty()) {
+                return null;
+            }
+            if (appInstance.length() > 64 || !INSTANCE_NAME_PATTERN.matcher(appInstance).matches()) {
+                return null;
+            }
+            return create(uri, appName, appInstance, appInstanceMatcher.group(4));
+        } else if (appMatcher.matches()) {
+            String appName = appMatcher.group(2);
+            if (appName == null || appName.trim().isEmpty()) {
+                return null;
+            }
+            return create(uri, appName, "_", appMatcher.group(3));
+        }
+        return null;
+    }
+
+    private static AppRequestInfo create(String uri, String appName, String appInstance, String subPath) {
+        String appPath;
+        if (subPath == null || subPath.trim().isEmpty()) {
+            subPath = null;
+            appPath = uri;
+        } else {
+            subPath = subPath.trim().substring(1);
+            appPath = uri.substring(0, uri.length() - subPath.length());
+        }
+        return new AppRequestInfo(appName, appInstance, appPath, subPath);
+    }
+
+}
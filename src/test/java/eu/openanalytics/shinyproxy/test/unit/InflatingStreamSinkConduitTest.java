@@ -0,0 +1,212 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.shinyproxy.InflatingStreamSinkConduit;
+import eu.openanalytics.shinyproxy.test.helpers.RecordingSinkConduit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class InflatingStreamSinkConduitTest {
+
+    private static final byte[] HTML = html();
+
+    @Test
+    public void testGzipMultipleBuffers() throws IOException {
+        byte[] compressed = gzip(HTML);
+        for (int chunkSize : new int[]{1, 7, 100, 5000, compressed.length}) {
+            for (int acceptLimit : new int[]{0, 1, 5, 1000}) {
+                RecordingSinkConduit sink = new RecordingSinkConduit(acceptLimit);
+                RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, true), compressed, chunkSize);
+                Assertions.assertArrayEquals(HTML, sink.getBytes(), "chunkSize " + chunkSize + " acceptLimit " + acceptLimit);
+                Assertions.assertTrue(sink.isTerminated());
+            }
+        }
+    }
+
+    @Test
+    public void testDeflateMultipleBuffers() throws IOException {
+        byte[] zlib = deflate(HTML, false);
+        byte[] raw = deflate(HTML, true);
+        for (int chunkSize : new int[]{2, 100, 5000}) {
+            RecordingSinkConduit sink = new RecordingSinkConduit(5);
+            RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, false), zlib, chunkSize);
+            Assertions.assertArrayEquals(HTML, sink.getBytes());
+
+            sink = new RecordingSinkConduit(5);
+            RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, false), raw, chunkSize);
+            Assertions.assertArrayEquals(HTML, sink.getBytes());
+        }
+    }
+
+    @Test
+    public void testGzipHeaderWithOptionalFields() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        // magic, deflate, flags (FHCRC, FEXTRA, FNAME and FCOMMENT), mtime, xfl and os
+        compressed.writeBytes(new byte[]{0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3});
+        // FEXTRA: length (little endian) followed by the data
+        compressed.writeBytes(new byte[]{3, 0, 'a', 'b', 'c'});
+        compressed.writeBytes("index.html\0".getBytes(StandardCharsets.ISO_8859_1));
+        compressed.writeBytes("a comment\0".getBytes(StandardCharsets.ISO_8859_1));
+        // FHCRC, not validated
+        compressed.writeBytes(new byte[]{0x12, 0x34});
+        compressed.writeBytes(deflate(HTML, true));
+        CRC32 crc = new CRC32();
+        crc.update(HTML);
+        compressed.writeBytes(ByteBuffer.allocate(8).order(java.nio.ByteOrder.LITTLE_ENDIAN)
+            .putInt((int) crc.getValue()).putInt(HTML.length).array());
+
+        for (int chunkSize : new int[]{1, 3, 100}) {
+            RecordingSinkConduit sink = new RecordingSinkConduit(0);
+            RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, true), compressed.toByteArray(), chunkSize);
+            Assertions.assertArrayEquals(HTML, sink.getBytes());
+        }
+    }
+
+    @Test
+    public void testInvalidGzipHeader() {
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        InflatingStreamSinkConduit conduit = new InflatingStreamSinkConduit(sink, true);
+        Assertions.assertThrows(IOException.class, () -> conduit.write(ByteBuffer.wrap(HTML)));
+    }
+
+    @Test
+    public void testHighlyCompressibleInput() throws IOException {
+        byte[] decoded = new byte[32 * 1024 * 1024];
+        byte[] compressed = gzip(decoded);
+        Assertions.assertTrue(compressed.length < 64 * 1024);
+
+        // the next conduit doesn't accept any data: at most one buffer is decoded, the input is not consumed
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        sink.setBlocked(true);
+        InflatingStreamSinkConduit conduit = new InflatingStreamSinkConduit(sink, true);
+        ByteBuffer src = ByteBuffer.wrap(compressed);
+        conduit.write(src);
+        Assertions.assertTrue(src.hasRemaining());
+        Assertions.assertEquals(0, conduit.write(src));
+        Assertions.assertEquals(0, sink.getBytes().length);
+
+        // once the next conduit accepts data, the complete response is written, including the output the
+        // inflater still holds after all input has been consumed
+        sink.setBlocked(false);
+        while (src.hasRemaining()) {
+            conduit.write(src);
+            Assertions.assertTrue(sink.getMaxWriteSize() <= 8192);
+        }
+        conduit.terminateWrites();
+        while (!conduit.flush()) {
+            sink.setBlocked(false);
+        }
+        Assertions.assertEquals(decoded.length, sink.getBytes().length);
+        Assertions.assertTrue(sink.isTerminated());
+    }
+
+    @Test
+    public void testSingleWriteDrainsInflater() throws IOException {
+        // all input fits in a single buffer, while the output is much larger than the output buffer
+        byte[] decoded = new byte[1024 * 1024];
+        Arrays.fill(decoded, (byte) 'x');
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, false), deflate(decoded, false), Integer.MAX_VALUE);
+        Assertions.assertArrayEquals(decoded, sink.getBytes());
+    }
+
+    @Test
+    public void testTruncatedInput() throws IOException {
+        byte[] compressed = gzip(HTML);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        RecordingSinkConduit sink = new RecordingSinkConduit(5);
+        RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, true), truncated, 100);
+
+        // the decoded part of the response is written, the response is terminated
+        byte[] result = sink.getBytes();
+        Assertions.assertTrue(result.length > 0);
+        Assertions.assertTrue(result.length < HTML.length);
+        Assertions.assertArrayEquals(Arrays.copyOf(HTML, result.length), result);
+        Assertions.assertTrue(sink.isTerminated());
+    }
+
+    @Test
+    public void testTrailingDataIgnored() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.writeBytes(gzip(HTML));
+        compressed.writeBytes("garbage".getBytes(StandardCharsets.UTF_8));
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, true), compressed.toByteArray(), 1000);
+        Assertions.assertArrayEquals(HTML, sink.getBytes());
+    }
+
+    @Test
+    public void testGzipMultipleMembers() throws IOException {
+        // e.g. a response that is compressed in parts, as allowed by RFC 1952
+        int split = HTML.length / 3;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.writeBytes(gzip(Arrays.copyOfRange(HTML, 0, split)));
+        compressed.writeBytes(gzip(Arrays.copyOfRange(HTML, split, 2 * split)));
+        compressed.writeBytes(gzip(Arrays.copyOfRange(HTML, 2 * split, HTML.length)));
+        compressed.writeBytes("garbage".getBytes(StandardCharsets.UTF_8));
+        for (int chunkSize : new int[]{1, 7, 5000, compressed.size()}) {
+            for (int acceptLimit : new int[]{0, 5}) {
+                RecordingSinkConduit sink = new RecordingSinkConduit(acceptLimit);
+                RecordingSinkConduit.writeAndTerminate(new InflatingStreamSinkConduit(sink, true), compressed.toByteArray(), chunkSize);
+                Assertions.assertArrayEquals(HTML, sink.getBytes(), "chunkSize " + chunkSize + " acceptLimit " + acceptLimit);
+                Assertions.assertTrue(sink.isTerminated());
+            }
+        }
+    }
+
+    private static byte[] html() {
+        StringBuilder html = new StringBuilder("<html><head><title>Test</title></head><body>\n");
+        for (int i = 0; i < 20_000; i++) {
+            html.append("<p>line ").append(i).append("</p>\n");
+        }
+        return html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(data);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.containerproxy.backend.IContainerBackend;
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.shinyproxy.LogReadinessWatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+public class LogReadinessWatcherTest {
+
+    private static final Pattern PATTERN = Pattern.compile("Listening on http://");
+
+    private final IContainerBackend containerBackend = Mockito.mock(IContainerBackend.class);
+    private final Proxy proxy = Proxy.builder().id("1").build();
+    private final CountDownLatch attached = new CountDownLatch(1);
+    // released when the output attacher stopped, i.e. the thread and the logs stream are released
+    private final CountDownLatch released = new CountDownLatch(1);
+    private LogReadinessWatcher logReadinessWatcher;
+
+    @BeforeEach
+    public void setup() {
+        logReadinessWatcher = new LogReadinessWatcher();
+        ReflectionTestUtils.setField(logReadinessWatcher, "containerBackend", containerBackend);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        logReadinessWatcher.destroy();
+    }
+
+    @Test
+    public void testMatch() throws Exception {
+        // the output attacher keeps following the logs (i.e. no new lines) after the matching line
+        setOutputAttacher(List.of("Starting app\n", "Listening on http://0.0.0.0:3838\n"));
+        CompletableFuture<Boolean> result = logReadinessWatcher.watch(proxy, PATTERN);
+        Assertions.assertTrue(result.get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(released.await(10, TimeUnit.SECONDS), "output attacher was not stopped");
+    }
+
+    @Test
+    public void testMatchOnStderr() throws Exception {
+        Mockito.when(containerBackend.getOutputAttacher(Mockito.any())).thenReturn((stdOut, stdErr) -> {
+            try {
+                stdErr.write("Listening on http://0.0.0.0:3838\n".getBytes(StandardCharsets.UTF_8));
+                followLogs();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        CompletableFuture<Boolean> result = logReadinessWatcher.watch(proxy, PATTERN);
+        Assertions.assertTrue(result.get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(released.await(10, TimeUnit.SECONDS), "output attacher was not stopped");
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        // e.g. the app is reachable according to the HTTP probe, or the startup timed out
+        setOutputAttacher(List.of("Starting app\n"));
+        CompletableFuture<Boolean> result = logReadinessWatcher.watch(proxy, PATTERN);
+        Assertions.assertTrue(attached.await(10, TimeUnit.SECONDS));
+        Assertions.assertFalse(result.isDone());
+
+        result.cancel(false);
+        Assertions.assertTrue(released.await(10, TimeUnit.SECONDS), "output attacher was not stopped");
+    }
+
+    @Test
+    public void testLogsEndWithoutMatch() throws Exception {
+        Mockito.when(containerBackend.getOutputAttacher(Mockito.any())).thenReturn((stdOut, stdErr) -> {
+            try {
+                stdOut.write("Starting app\nError\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Assertions.assertFalse(logReadinessWatcher.watch(proxy, PATTERN).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoOutputAttacher() throws Exception {
+        Mockito.when(containerBackend.getOutputAttacher(Mockito.any())).thenReturn(null);
+        Assertions.assertFalse(logReadinessWatcher.watch(proxy, PATTERN).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLongLine() throws Exception {
+        setOutputAttacher(List.of("a".repeat(100_000) + "\n", "Listening on http://0.0.0.0:3838\n"));
+        Assertions.assertTrue(logReadinessWatcher.watch(proxy, PATTERN).get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Writes the given lines to stdout and then keeps following the logs (like the backends do), until interrupted.
+     */
+    private void setOutputAttacher(List<String> lines) {
+        BiConsumer<OutputStream, OutputStream> outputAttacher = (stdOut, stdErr) -> {
+            try {
+                for (String line : lines) {
+                    stdOut.write(line.getBytes(StandardCharsets.UTF_8));
+                }
+                followLogs();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        Mockito.when(containerBackend.getOutputAttacher(Mockito.any())).thenReturn(outputAttacher);
+    }
+
+    private void followLogs() {
+        attached.countDown();
+        try {
+            Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            released.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.runtime.ProxyStatus;
+import eu.openanalytics.shinyproxy.ProxyInstanceCounter;
+import eu.openanalytics.shinyproxy.ProxyStoreEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+public class ProxyInstanceCounterTest {
+
+    private final ProxyInstanceCounter counter = new ProxyInstanceCounter();
+
+    @Test
+    public void testStartAndStop() {
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "1", 2));
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "2", 2));
+        Assertions.assertFalse(counter.tryReserve("jack", "01_hello", "3", 2));
+        Assertions.assertTrue(counter.tryReserve("jack", "02_hello", "3", 2));
+        Assertions.assertTrue(counter.tryReserve("jeff", "01_hello", "4", 2));
+        Assertions.assertEquals(2, counter.getCount("jack", "01_hello"));
+
+        // reserving the same proxy again does not count it twice
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "1", 2));
+        Assertions.assertEquals(2, counter.getCount("jack", "01_hello"));
+
+        // events of reserved proxies do not count them again
+        Proxy proxy = createProxy("1", "jack", "01_hello", ProxyStatus.New);
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Added, proxy));
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, proxy.toBuilder().status(ProxyStatus.Up).build()));
+        Assertions.assertEquals(2, counter.getCount("jack", "01_hello"));
+
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, proxy.toBuilder().status(ProxyStatus.Stopping).build()));
+        Assertions.assertEquals(2, counter.getCount("jack", "01_hello"));
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, proxy.toBuilder().status(ProxyStatus.Stopped).build()));
+        Assertions.assertEquals(1, counter.getCount("jack", "01_hello"));
+        // removing twice does not release twice
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, proxy.toBuilder().status(ProxyStatus.Stopped).build()));
+        Assertions.assertEquals(1, counter.getCount("jack", "01_hello"));
+
+        // proxy failed to start before it was added to the store
+        counter.release("2");
+        Assertions.assertEquals(0, counter.getCount("jack", "01_hello"));
+        Assertions.assertEquals(1, counter.getCount("jack", "02_hello"));
+        Assertions.assertEquals(1, counter.getCount("jeff", "01_hello"));
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "5", 2));
+    }
+
+    @Test
+    public void testUnlimited() {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(counter.tryReserve("jack", "01_hello", String.valueOf(i), -1));
+        }
+        Assertions.assertEquals(10, counter.getCount("jack", "01_hello"));
+    }
+
+    @Test
+    public void testProxyNotReserved() {
+        // e.g. started using the API or recovered
+        Proxy proxy = createProxy("1", "jack", "01_hello", ProxyStatus.Up);
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Added, proxy));
+        Assertions.assertEquals(1, counter.getCount("jack", "01_hello"));
+        Assertions.assertFalse(counter.tryReserve("jack", "01_hello", "2", 1));
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, proxy));
+        Assertions.assertEquals(0, counter.getCount("jack", "01_hello"));
+    }
+
+    @Test
+    public void testUpdateAfterRemove() {
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "1", 1));
+        Proxy proxy = createProxy("1", "jack", "01_hello", ProxyStatus.Up);
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Added, proxy));
+
+        // a (stale) update of the proxy is handled after it was removed
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, proxy));
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, proxy));
+        Assertions.assertEquals(0, counter.getCount("jack", "01_hello"));
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "2", 1));
+    }
+
+    @Test
+    public void testUpdateOfUnavailableProxy() {
+        // an update of a proxy that is being stopped, handled after the remove event of a previous update
+        Proxy proxy = createProxy("1", "jack", "01_hello", ProxyStatus.Stopping);
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, proxy));
+        Assertions.assertEquals(0, counter.getCount("jack", "01_hello"));
+    }
+
+    @Test
+    public void testTransfer() {
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "1", 1));
+        Proxy proxy = createProxy("1", "jack", "01_hello", ProxyStatus.Up);
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Added, proxy));
+
+        // transfer by removing and adding the proxy
+        Proxy transferred = proxy.toBuilder().userId("jeff").build();
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, proxy));
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Added, transferred));
+        Assertions.assertEquals(0, counter.getCount("jack", "01_hello"));
+        Assertions.assertEquals(1, counter.getCount("jeff", "01_hello"));
+
+        // the proxy is no longer considered removed
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, transferred));
+        Assertions.assertEquals(1, counter.getCount("jeff", "01_hello"));
+
+        // transfer by updating the proxy
+        Proxy transferredBack = transferred.toBuilder().userId("jack").build();
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, transferredBack));
+        Assertions.assertEquals(1, counter.getCount("jack", "01_hello"));
+        Assertions.assertEquals(0, counter.getCount("jeff", "01_hello"));
+        Assertions.assertTrue(counter.tryReserve("jeff", "01_hello", "2", 1));
+        Assertions.assertFalse(counter.tryReserve("jack", "01_hello", "3", 1));
+
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Removed, transferredBack));
+        Assertions.assertEquals(0, counter.getCount("jack", "01_hello"));
+        Assertions.assertEquals(1, counter.getCount("jeff", "01_hello"));
+    }
+
+    @Test
+    public void testSpecIds() {
+        Assertions.assertEquals(Set.of(), counter.getSpecIds("jack"));
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "1", -1));
+        Assertions.assertTrue(counter.tryReserve("jack", "01_hello", "2", -1));
+        Assertions.assertTrue(counter.tryReserve("jack", "02_hello", "3", -1));
+        Assertions.assertTrue(counter.tryReserve("jeff", "03_hello", "4", -1));
+        Assertions.assertEquals(Set.of("01_hello", "02_hello"), counter.getSpecIds("jack"));
+        Assertions.assertEquals(Set.of("03_hello"), counter.getSpecIds("jeff"));
+
+        counter.release("1");
+        Assertions.assertEquals(Set.of("01_hello", "02_hello"), counter.getSpecIds("jack"));
+        counter.release("2");
+        Assertions.assertEquals(Set.of("02_hello"), counter.getSpecIds("jack"));
+
+        // transfer by updating the proxy
+        counter.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, createProxy("3", "jeff", "02_hello", ProxyStatus.Up)));
+        Assertions.assertEquals(Set.of(), counter.getSpecIds("jack"));
+        Assertions.assertEquals(Set.of("02_hello", "03_hello"), counter.getSpecIds("jeff"));
+    }
+
+    private Proxy createProxy(String id, String userId, String specId, ProxyStatus status) {
+        return Proxy.builder()
+            .id(id)
+            .userId(userId)
+            .specId(specId)
+            .status(status)
+            .build();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.shinyproxy.controllers.AppController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link AppController#extractQueryParameter(String, String)}.
+ */
+public class QueryParameterTest {
+
+    @Test
+    public void testMissingQuery() {
+        Assertions.assertNull(AppController.extractQueryParameter(null, "sp_proxy_id"));
+        Assertions.assertNull(AppController.extractQueryParameter("", "sp_proxy_id"));
+        Assertions.assertNull(AppController.extractQueryParameter("x=1&y=2", "sp_proxy_id"));
+    }
+
+    @Test
+    public void testSimpleValue() {
+        Assertions.assertEquals("abc", AppController.extractQueryParameter("sp_proxy_id=abc", "sp_proxy_id"));
+        Assertions.assertEquals("abc", AppController.extractQueryParameter("x=1&sp_proxy_id=abc", "sp_proxy_id"));
+        Assertions.assertEquals("abc", AppController.extractQueryParameter("sp_proxy_id=abc&x=1", "sp_proxy_id"));
+    }
+
+    @Test
+    public void testEmptyValue() {
+        Assertions.assertEquals("", AppController.extractQueryParameter("sp_proxy_id=", "sp_proxy_id"));
+        Assertions.assertEquals("", AppController.extractQueryParameter("sp_proxy_id=&x=1", "sp_proxy_id"));
+    }
+
+    @Test
+    public void testParameterWithoutValue() {
+        Assertions.assertNull(AppController.extractQueryParameter("sp_proxy_id", "sp_proxy_id"));
+        Assertions.assertNull(AppController.extractQueryParameter("x=1&sp_proxy_id&y=2", "sp_proxy_id"));
+        // the first occurrence wins, even if it has no value
+        Assertions.assertNull(AppController.extractQueryParameter("sp_proxy_id&sp_proxy_id=abc", "sp_proxy_id"));
+    }
+
+    @Test
+    public void testRepeatedNames() {
+        Assertions.assertEquals("first", AppController.extractQueryParameter("sp_proxy_id=first&sp_proxy_id=second", "sp_proxy_id"));
+        Assertions.assertEquals("", AppController.extractQueryParameter("a=&a=x", "a"));
+    }
+
+    @Test
+    public void testPrefixOfOtherName() {
+        Assertions.assertNull(AppController.extractQueryParameter("ab=1", "a"));
+        Assertions.assertEquals("2", AppController.extractQueryParameter("ab=1&a=2", "a"));
+        Assertions.assertEquals("1", AppController.extractQueryParameter("ab=1&a=2", "ab"));
+        Assertions.assertNull(AppController.extractQueryParameter("a=1", "ab"));
+        Assertions.assertNull(AppController.extractQueryParameter("xa=1", "a"));
+    }
+
+    @Test
+    public void testPercentEncoded() {
+        // values are returned as-is, i.e. not decoded
+        Assertions.assertEquals("a%20b%26c", AppController.extractQueryParameter("sp_proxy_id=a%20b%26c", "sp_proxy_id"));
+        Assertions.assertEquals("a=b", AppController.extractQueryParameter("sp_proxy_id=a=b", "sp_proxy_id"));
+        // encoded names are not decoded either
+        Assertions.assertNull(AppController.extractQueryParameter("sp%5Fproxy%5Fid=abc", "sp_proxy_id"));
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.shinyproxy.ShinyProxyIframeScriptInjector;
+import eu.openanalytics.shinyproxy.test.helpers.RecordingSinkConduit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.server.DefaultByteBufferPool;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import io.undertow.util.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ShinyProxyIframeScriptInjectorTest {
+
+    private static final String SCRIPT = "<script src='/shiny.iframe.js'></script>";
+    private static final byte[] HTML = ("<html><head><title>Test</title></head><body>" + "<p>content</p>".repeat(100) + "</body></html>").getBytes(StandardCharsets.UTF_8);
+
+    private final CountingBufferPool bufferPool = new CountingBufferPool(64);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Counter skipped = meterRegistry.counter("shinyproxy.iframe.script.injection.skipped", "reason", "max-buffer-size");
+
+    @Test
+    public void testBufferedInjection() throws IOException {
+        for (int chunkSize : new int[]{1, 7, 64, 1000, HTML.length}) {
+            for (int acceptLimit : new int[]{0, 5, 100}) {
+                HttpServerExchange exchange = createExchange("text/html; charset=utf-8", HTML.length);
+                RecordingSinkConduit sink = new RecordingSinkConduit(acceptLimit);
+                RecordingSinkConduit.writeAndTerminate(createInjector(sink, exchange, -1), HTML, chunkSize);
+
+                Assertions.assertEquals(new String(HTML, StandardCharsets.UTF_8) + SCRIPT, sink.getString());
+                Assertions.assertEquals(String.valueOf(HTML.length + SCRIPT.length()), exchange.getResponseHeaders().getFirst(Headers.CONTENT_LENGTH));
+                Assertions.assertTrue(sink.isTerminated());
+            }
+        }
+        // the response is stored in pooled buffers, which are all released
+        Assertions.assertTrue(bufferPool.allocated > HTML.length / 64);
+        Assertions.assertEquals(0, bufferPool.open);
+        Assertions.assertEquals(0, skipped.count());
+    }
+
+    @Test
+    public void testGatheringWrite() throws IOException {
+        HttpServerExchange exchange = createExchange("text/html", -1);
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        ShinyProxyIframeScriptInjector injector = createInjector(sink, exchange, -1);
+        RecordingSinkConduit.writeAndTerminate(injector, HTML, HTML.length);
+
+        // the buffered body and the script are written using a single gathering write
+        Assertions.assertEquals(1, sink.getGatheringWrites());
+        Assertions.assertEquals(new String(HTML, StandardCharsets.UTF_8) + SCRIPT, sink.getString());
+    }
+
+    @Test
+    public void testMaxBufferSizeExceeded() throws IOException {
+        for (int chunkSize : new int[]{1, 7, 100, HTML.length}) {
+            for (int acceptLimit : new int[]{0, 5}) {
+                // without a Content-Length, the limit is only known to be exceeded while buffering
+                HttpServerExchange exchange = createExchange("text/html", -1);
+                RecordingSinkConduit sink = new RecordingSinkConduit(acceptLimit);
+                RecordingSinkConduit.writeAndTerminate(createInjector(sink, exchange, 100), HTML, chunkSize);
+
+                // the response is passed through as-is, including the part that was already buffered
+                Assertions.assertArrayEquals(HTML, sink.getBytes());
+                Assertions.assertNull(exchange.getResponseHeaders().getFirst(Headers.CONTENT_LENGTH));
+                Assertions.assertTrue(sink.isTerminated());
+            }
+        }
+        Assertions.assertEquals(0, bufferPool.open);
+        Assertions.assertEquals(8, skipped.count());
+    }
+
+    @Test
+    public void testContentLengthExceedsMaxBufferSize() throws IOException {
+        HttpServerExchange exchange = createExchange("text/html", HTML.length);
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        RecordingSinkConduit.writeAndTerminate(createInjector(sink, exchange, 100), HTML, 10);
+
+        // the response is not buffered at all
+        Assertions.assertArrayEquals(HTML, sink.getBytes());
+        Assertions.assertEquals(String.valueOf(HTML.length), exchange.getResponseHeaders().getFirst(Headers.CONTENT_LENGTH));
+        Assertions.assertEquals(0, bufferPool.allocated);
+        Assertions.assertEquals(1, skipped.count());
+    }
+
+    @Test
+    public void testWithinMaxBufferSize() throws IOException {
+        HttpServerExchange exchange = createExchange("text/html", -1);
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        RecordingSinkConduit.writeAndTerminate(createInjector(sink, exchange, HTML.length), HTML, 10);
+
+        Assertions.assertEquals(new String(HTML, StandardCharsets.UTF_8) + SCRIPT, sink.getString());
+        Assertions.assertEquals(0, skipped.count());
+    }
+
+    @Test
+    public void testNonHtmlResponse() throws IOException {
+        byte[] json = "{\"status\":\"success\"}".getBytes(StandardCharsets.UTF_8);
+        HttpServerExchange exchange = createExchange("application/json", json.length);
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        RecordingSinkConduit.writeAndTerminate(createInjector(sink, exchange, 10), json, 5);
+
+        Assertions.assertArrayEquals(json, sink.getBytes());
+        Assertions.assertEquals(0, bufferPool.allocated);
+        Assertions.assertEquals(0, skipped.count());
+    }
+
+    @Test
+    public void testErrorResponse() throws IOException {
+        HttpServerExchange exchange = createExchange("text/html", HTML.length);
+        exchange.setStatusCode(500);
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        RecordingSinkConduit.writeAndTerminate(createInjector(sink, exchange, -1), HTML, 100);
+
+        Assertions.assertArrayEquals(HTML, sink.getBytes());
+        Assertions.assertEquals(0, bufferPool.allocated);
+    }
+
+    @Test
+    public void testTruncateReleasesBuffers() throws IOException {
+        HttpServerExchange exchange = createExchange("text/html", -1);
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        ShinyProxyIframeScriptInjector injector = createInjector(sink, exchange, -1);
+        injector.write(ByteBuffer.wrap(HTML));
+        Assertions.assertTrue(bufferPool.open > 0);
+
+        injector.truncateWrites();
+        Assertions.assertEquals(0, bufferPool.open);
+        Assertions.assertEquals(0, sink.getBytes().length);
+    }
+
+    @Test
+    public void testNegotiateEncoding() {
+        Assertions.assertNull(ShinyProxyIframeScriptInjector.negotiateEncoding(null));
+        Assertions.assertNull(ShinyProxyIframeScriptInjector.negotiateEncoding("br, identity"));
+        Assertions.assertEquals("gzip", ShinyProxyIframeScriptInjector.negotiateEncoding("gzip, deflate, br"));
+        Assertions.assertEquals("gzip", ShinyProxyIframeScriptInjector.negotiateEncoding("deflate, GZIP;q=0.5"));
+        Assertions.assertEquals("deflate", ShinyProxyIframeScriptInjector.negotiateEncoding("gzip;q=0, deflate"));
+        Assertions.assertEquals("deflate", ShinyProxyIframeScriptInjector.negotiateEncoding("gzip; q=0.000, deflate;q=0.1"));
+        Assertions.assertNull(ShinyProxyIframeScriptInjector.negotiateEncoding("gzip;q=0.0, deflate;q=0"));
+    }
+
+    private ShinyProxyIframeScriptInjector createInjector(RecordingSinkConduit sink, HttpServerExchange exchange, long maxBufferSize) {
+        return new ShinyProxyIframeScriptInjector(sink, exchange, "/shiny.iframe.js", maxBufferSize, skipped::increment);
+    }
+
+    private HttpServerExchange createExchange(String contentType, long contentLength) {
+        ServerConnection connection = Mockito.mock(ServerConnection.class);
+        Mockito.when(connection.getByteBufferPool()).thenReturn(bufferPool);
+        HttpServerExchange exchange = new HttpServerExchange(connection);
+        exchange.setStatusCode(200);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, contentType);
+        if (contentLength >= 0) {
+            exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, contentLength);
+        }
+        return exchange;
+    }
+
+    /**
+     * Keeps track of the number of buffers that are allocated and not yet released.
+     */
+    private static class CountingBufferPool implements ByteBufferPool {
+
+        private final ByteBufferPool delegate;
+        private int allocated = 0;
+        private int open = 0;
+
+        CountingBufferPool(int bufferSize) {
+            delegate = new DefaultByteBufferPool(false, bufferSize);
+        }
+
+        @Override
+        public PooledByteBuffer allocate() {
+            PooledByteBuffer buffer = delegate.allocate();
+            allocated++;
+            open++;
+            return new PooledByteBuffer() {
+                private boolean closed = false;
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    return buffer.getBuffer();
+                }
+
+                @Override
+                public void close() {
+                    if (!closed) {
+                        closed = true;
+                        open--;
+                        buffer.close();
+                    }
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return !closed;
+                }
+            };
+        }
+
+        @Override
+        public ByteBufferPool getArrayBackedPool() {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        @Override
+        public int getBufferSize() {
+            return delegate.getBufferSize();
+        }
+
+        @Override
+        public boolean isDirect() {
+            return delegate.isDirect();
+        }
+
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.shinyproxy.ShinyProxyStreamingIframeScriptInjector;
+import eu.openanalytics.shinyproxy.test.helpers.RecordingSinkConduit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ShinyProxyStreamingIframeScriptInjectorTest {
+
+    private static final String SCRIPT = "<script src='/shiny.iframe.js'></script>";
+
+    @Test
+    public void testInjectAfterHead() throws IOException {
+        assertInjected("<html><head><title>Test</title></head><body></body></html>",
+            "<html><head>" + SCRIPT + "<title>Test</title></head><body></body></html>");
+        assertInjected("<!DOCTYPE html>\n<HTML><HEAD>\n<title>Test</title>",
+            "<!DOCTYPE html>\n<HTML><HEAD>" + SCRIPT + "\n<title>Test</title>");
+    }
+
+    @Test
+    public void testHeadWithAttributes() throws IOException {
+        assertInjected("<html><head lang=\"en\"><title>Test</title>",
+            "<html><head lang=\"en\">" + SCRIPT + "<title>Test</title>");
+        assertInjected("<html><head attr='>'><title>Test</title>",
+            "<html><head attr='>'>" + SCRIPT + "<title>Test</title>");
+        assertInjected("<html><head\n data-x=\"a>b\" data-y='\"'>x",
+            "<html><head\n data-x=\"a>b\" data-y='\"'>" + SCRIPT + "x");
+    }
+
+    @Test
+    public void testHeadInComment() throws IOException {
+        assertInjected("<html><!-- <head> --><head><title>Test</title>",
+            "<html><!-- <head> --><head>" + SCRIPT + "<title>Test</title>");
+        assertInjected("<!--<head>--><head>x",
+            "<!--<head>--><head>" + SCRIPT + "x");
+        assertInjected("<!-- a -- <head> - --><head>x",
+            "<!-- a -- <head> - --><head>" + SCRIPT + "x");
+        assertInjected("<!----><head>x",
+            "<!----><head>" + SCRIPT + "x");
+    }
+
+    @Test
+    public void testHeadInScript() throws IOException {
+        // without a head tag, the script is injected before the first script
+        assertInjected("<html><script>var x = '<head>';</script><body>",
+            "<html>" + SCRIPT + "<script>var x = '<head>';</script><body>");
+    }
+
+    @Test
+    public void testWithoutHead() throws IOException {
+        assertInjected("<html><body><p>Test</p></body></html>",
+            "<html>" + SCRIPT + "<body><p>Test</p></body></html>");
+        assertInjected("<html><title>Test</title></head><body>",
+            "<html><title>Test</title>" + SCRIPT + "</head><body>");
+        // tags that start with head are not the head tag
+        assertInjected("<html><header>Test</header><headings><body>",
+            "<html><header>Test</header><headings>" + SCRIPT + "<body>");
+        assertInjected("<p>no tags that mark a position</p>",
+            "<p>no tags that mark a position</p>" + SCRIPT);
+        assertInjected("<p>incomplete tag at the end <hea",
+            "<p>incomplete tag at the end <hea" + SCRIPT);
+        assertInjected("", SCRIPT);
+    }
+
+    @Test
+    public void testLongTagNames() throws IOException {
+        assertInjected("<averyveryverylongtagname><head>x",
+            "<averyveryverylongtagname><head>" + SCRIPT + "x");
+        assertInjected("<<head>x", "<<head>" + SCRIPT + "x");
+    }
+
+    @Test
+    public void testOnlyFirstHead() throws IOException {
+        assertInjected("<head></head><head>x", "<head>" + SCRIPT + "</head><head>x");
+    }
+
+    @Test
+    public void testBackPressure() throws IOException {
+        String html = "<html><!-- <head> --><head attr='>'>" + "<p>content</p>".repeat(1000);
+        String expected = "<html><!-- <head> --><head attr='>'>" + SCRIPT + "<p>content</p>".repeat(1000);
+        for (int chunkSize : new int[]{1, 2, 5, 16, 100}) {
+            for (int acceptLimit : new int[]{1, 3, 50}) {
+                RecordingSinkConduit sink = new RecordingSinkConduit(acceptLimit);
+                RecordingSinkConduit.writeAndTerminate(new ShinyProxyStreamingIframeScriptInjector(sink, "/shiny.iframe.js"),
+                    html.getBytes(StandardCharsets.UTF_8), chunkSize);
+                Assertions.assertEquals(expected, sink.getString(), "chunkSize " + chunkSize + " acceptLimit " + acceptLimit);
+                Assertions.assertTrue(sink.isTerminated());
+            }
+        }
+    }
+
+    @Test
+    public void testBlockedNextConduit() throws IOException {
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        ShinyProxyStreamingIframeScriptInjector injector = new ShinyProxyStreamingIframeScriptInjector(sink, "/shiny.iframe.js");
+        ByteBuffer first = ByteBuffer.wrap("<html><he".getBytes(StandardCharsets.UTF_8));
+        injector.write(first);
+        Assertions.assertFalse(first.hasRemaining());
+
+        // the script is pending, nothing is accepted while the next conduit is blocked
+        sink.setBlocked(true);
+        ByteBuffer second = ByteBuffer.wrap("ad><title>".getBytes(StandardCharsets.UTF_8));
+        injector.write(second);
+        Assertions.assertEquals(0, injector.write(second));
+        Assertions.assertFalse(injector.flush());
+
+        sink.setBlocked(false);
+        while (second.hasRemaining()) {
+            injector.write(second);
+        }
+        injector.terminateWrites();
+        Assertions.assertTrue(injector.flush());
+        Assertions.assertEquals("<html><head>" + SCRIPT + "<title>", sink.getString());
+        Assertions.assertTrue(sink.isTerminated());
+    }
+
+    @Test
+    public void testPassThroughAfterInjection() throws IOException {
+        RecordingSinkConduit sink = new RecordingSinkConduit(0);
+        ShinyProxyStreamingIframeScriptInjector injector = new ShinyProxyStreamingIframeScriptInjector(sink, "/shiny.iframe.js");
+        injector.write(ByteBuffer.wrap("<head>".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertTrue(injector.flush());
+        ByteBuffer body = ByteBuffer.wrap("<head><body>".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        int writes = sink.getWrites();
+        injector.write(body);
+        // the remaining part of the response is written as-is, using a single write
+        Assertions.assertFalse(body.hasRemaining());
+        Assertions.assertEquals(writes + 1, sink.getWrites());
+    }
+
+    @Test
+    public void testTransferFromFile() throws IOException {
+        // e.g. a static file served by Undertow, must not bypass the injection
+        Path file = Files.createTempFile("shinyproxy", ".html");
+        try {
+            Files.writeString(file, "<html><head><title>Test</title>");
+            RecordingSinkConduit sink = new RecordingSinkConduit(0);
+            ShinyProxyStreamingIframeScriptInjector injector = new ShinyProxyStreamingIframeScriptInjector(sink, "/shiny.iframe.js");
+            try (FileChannel channel = FileChannel.open(file)) {
+                long position = 0;
+                while (position < channel.size()) {
+                    position += injector.transferFrom(channel, position, channel.size() - position);
+                }
+            }
+            injector.terminateWrites();
+            Assertions.assertTrue(injector.flush());
+            Assertions.assertEquals("<html><head>" + SCRIPT + "<title>Test</title>", sink.getString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertInjected(String html, String expected) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        // every split of the response over two or more buffers must give the same result
+        for (int chunkSize = 1; chunkSize <= Math.max(1, bytes.length); chunkSize++) {
+            RecordingSinkConduit sink = new RecordingSinkConduit(0);
+            RecordingSinkConduit.writeAndTerminate(new ShinyProxyStreamingIframeScriptInjector(sink, "/shiny.iframe.js"), bytes, chunkSize);
+            Assertions.assertEquals(expected, sink.getString(), "chunkSize " + chunkSize);
+        }
+        for (int split = 0; split <= bytes.length; split++) {
+            RecordingSinkConduit sink = new RecordingSinkConduit(0);
+            ShinyProxyStreamingIframeScriptInjector injector = new ShinyProxyStreamingIframeScriptInjector(sink, "/shiny.iframe.js");
+            ByteBuffer first = ByteBuffer.wrap(bytes, 0, split);
+            ByteBuffer second = ByteBuffer.wrap(bytes, split, bytes.length - split);
+            while (first.hasRemaining() || second.hasRemaining()) {
+                injector.write(new ByteBuffer[]{first, second}, 0, 2);
+            }
+            injector.terminateWrites();
+            Assertions.assertTrue(injector.flush());
+            Assertions.assertEquals(expected, sink.getString(), "split " + split);
+        }
+    }
+
+}
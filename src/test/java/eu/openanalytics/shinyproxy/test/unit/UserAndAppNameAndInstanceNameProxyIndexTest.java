@@ -0,0 +1,169 @@
+/*
+ * ShinyProxy
+ *
+ * Copyright (C) 2016-2025 Open Analytics
+ *
+ * ===========================================================================
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Apache License as published by
+ * The Apache Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * Apache License for more details.
+ *
+ * You should have received a copy of the Apache License
+ * along with this program.  If not, see <http://www.apache.org/licenses/>
+ */
+package eu.openanalytics.shinyproxy.test.unit;
+
+import eu.openanalytics.containerproxy.model.runtime.Proxy;
+import eu.openanalytics.containerproxy.model.runtime.runtimevalues.RuntimeValue;
+import eu.openanalytics.containerproxy.model.store.IProxyStore;
+import eu.openanalytics.containerproxy.service.AccessControlEvaluationService;
+import eu.openanalytics.shinyproxy.EventPublishingProxyStore;
+import eu.openanalytics.shinyproxy.ProxyStoreEvent;
+import eu.openanalytics.shinyproxy.UserAndAppNameAndInstanceNameProxyIndex;
+import eu.openanalytics.shinyproxy.runtimevalues.AppInstanceKey;
+import eu.openanalytics.shinyproxy.test.helpers.InMemoryProxyStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Objects;
+
+public class UserAndAppNameAndInstanceNameProxyIndexTest {
+
+    private InMemoryProxyStore delegate;
+    private IProxyStore proxyStore;
+    private UserAndAppNameAndInstanceNameProxyIndex index;
+
+    @BeforeEach
+    public void setup() {
+        setup(new MockEnvironment());
+    }
+
+    private void setup(MockEnvironment environment) {
+        delegate = new InMemoryProxyStore();
+        proxyStore = new EventPublishingProxyStore();
+        AccessControlEvaluationService accessControlEvaluationService = Mockito.mock(AccessControlEvaluationService.class);
+        Mockito.when(accessControlEvaluationService.usernameEquals(Mockito.any(), Mockito.any()))
+            .thenAnswer(invocation -> Objects.equals(invocation.getArgument(0), invocation.getArgument(1)));
+        index = new UserAndAppNameAndInstanceNameProxyIndex(proxyStore, accessControlEvaluationService, environment);
+        ReflectionTestUtils.setField(proxyStore, "delegate", delegate);
+        ReflectionTestUtils.setField(proxyStore, "applicationEventPublisher", (ApplicationEventPublisher) (event) -> {
+            if (event instanceof ProxyStoreEvent proxyStoreEvent) {
+                index.onProxyStoreEvent(proxyStoreEvent);
+            }
+        });
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        Proxy proxy = createProxy("1", "jack", "01_hello", "_");
+        proxyStore.addProxy(proxy);
+        Assertions.assertSame(proxy, index.getProxy("jack", "01_hello", "_"));
+        Assertions.assertNull(index.getProxy("jack", "01_hello", "other"));
+        Assertions.assertNull(index.getProxy("jack", "02_hello", "_"));
+        Assertions.assertNull(index.getProxy("jeff", "01_hello", "_"));
+
+        Proxy updated = proxy.toBuilder().build();
+        proxyStore.updateProxy(updated);
+        Assertions.assertSame(updated, index.getProxy("jack", "01_hello", "_"));
+
+        proxyStore.removeProxy(updated);
+        Assertions.assertNull(index.getProxy("jack", "01_hello", "_"));
+    }
+
+    @Test
+    public void testUpdateAfterRemove() {
+        Proxy proxy = createProxy("1", "jack", "01_hello", "_");
+        proxyStore.addProxy(proxy);
+        proxyStore.removeProxy(proxy);
+
+        // an update event of a stopped proxy, handled after the proxy was removed from the store
+        index.onProxyStoreEvent(new ProxyStoreEvent(ProxyStoreEvent.Type.Updated, proxy));
+        Assertions.assertNull(index.getProxy("jack", "01_hello", "_"));
+
+        // a new proxy for the same instance is found
+        Proxy newProxy = createProxy("2", "jack", "01_hello", "_");
+        proxyStore.addProxy(newProxy);
+        Assertions.assertSame(newProxy, index.getProxy("jack", "01_hello", "_"));
+    }
+
+    @Test
+    public void testUpdateDoesNotReplaceNewerProxy() {
+        Proxy oldProxy = createProxy("1", "jack", "01_hello", "_");
+        Proxy newProxy = createProxy("2", "jack", "01_hello", "_");
+        proxyStore.addProxy(oldProxy);
+        proxyStore.addProxy(newProxy);
+
+        // e.g. the old proxy is being stopped
+        proxyStore.updateProxy(oldProxy.toBuilder().build());
+        Assertions.assertSame(newProxy, index.getProxy("jack", "01_hello", "_"));
+    }
+
+    @Test
+    public void testTransfer() {
+        Proxy proxy = createProxy("1", "jack", "01_hello", "_");
+        proxyStore.addProxy(proxy);
+
+        // see ProxyApiController#changeProxyUserId
+        proxyStore.removeProxy(proxy);
+        Proxy transferred = proxy.toBuilder()
+            .userId("jeff")
+            .addRuntimeValue(new RuntimeValue(AppInstanceKey.inst, "jack-Default"), true)
+            .build();
+        proxyStore.addProxy(transferred);
+
+        Assertions.assertNull(index.getProxy("jack", "01_hello", "_"));
+        Assertions.assertSame(transferred, index.getProxy("jeff", "01_hello", "jack-Default"));
+    }
+
+    @Test
+    public void testChangedKey() {
+        Proxy proxy = createProxy("1", "jack", "01_hello", "_");
+        proxyStore.addProxy(proxy);
+
+        Proxy renamed = proxy.toBuilder()
+            .addRuntimeValue(new RuntimeValue(AppInstanceKey.inst, "other"), true)
+            .build();
+        proxyStore.updateProxy(renamed);
+        Assertions.assertNull(index.getProxy("jack", "01_hello", "_"));
+        Assertions.assertSame(renamed, index.getProxy("jack", "01_hello", "other"));
+    }
+
+    @Test
+    public void testProxyWithoutEventLocalStore() {
+        // with a local store, every proxy results in an event, a miss does not scan the store
+        Proxy proxy = createProxy("1", "jack", "01_hello", "_");
+        delegate.addProxy(proxy);
+        Assertions.assertNull(index.getProxy("jack", "01_hello", "_"));
+    }
+
+    @Test
+    public void testProxyWithoutEventDistributedStore() {
+        setup(new MockEnvironment().withProperty("proxy.store-mode", "Redis"));
+        // e.g. added by another replica: found by the fallback, which scans the store
+        Proxy proxy = createProxy("1", "jack", "01_hello", "_");
+        delegate.addProxy(proxy);
+        Assertions.assertSame(proxy, index.getProxy("jack", "01_hello", "_"));
+    }
+
+    private static Proxy createProxy(String id, String userId, String specId, String instance) {
+        return Proxy.builder()
+            .id(id)
+            .userId(userId)
+            .specId(specId)
+            .addRuntimeValue(new RuntimeValue(AppInstanceKey.inst, instance), false)
+            .build();
+    }
+
+}